@@ -0,0 +1,95 @@
+package com.example.guandan.benchmark;
+
+import com.example.guandan.model.*;
+import com.example.guandan.service.GameService;
+import java.util.*;
+
+// Seeded hands and plays shared by the benchmarks so runs are comparable between builds
+public final class BenchmarkData {
+    
+    public static final int LEVEL = 2;
+    
+    private BenchmarkData() {}
+    
+    public static List<Card> deck() {
+        List<Card> deck = new ArrayList<>(108);
+        for (int copy = 0; copy < 2; copy++) {
+            for (int face = 0; face < CardCodec.FACES; face++) {
+                deck.add(Card.ofFace(face));
+            }
+        }
+        return deck;
+    }
+    
+    public static GameRoom dealtRoom(Random random) {
+        List<Card> deck = deck();
+        Collections.shuffle(deck, random);
+        
+        GameRoom room = new GameRoom();
+        room.setRoomId("BENCH0");
+        room.setGameType("MULTIPLE");
+        room.setLevel(LEVEL);
+        for (int i = 0; i < 4; i++) {
+            GameRoom.Player player = new GameRoom.Player((long) i + 1, "player" + i, i);
+            player.setHand(deck.subList(i * 27, (i + 1) * 27));
+            room.getPlayers()[i] = player;
+        }
+        room.setStarted(true);
+        return room;
+    }
+    
+    // Legal plays a player could make from the dealt hands: singles, pairs, triples, bombs and straights
+    public static List<List<Card>> plays(Random random, int size) {
+        List<List<Card>> plays = new ArrayList<>();
+        while (plays.size() < size) {
+            GameRoom room = dealtRoom(random);
+            for (GameRoom.Player player : room.getPlayers()) {
+                plays.addAll(playsFromHand(player.getHand()));
+            }
+        }
+        Collections.shuffle(plays, random);
+        return new ArrayList<>(plays.subList(0, size));
+    }
+    
+    public static List<CardPattern> patterns(GameService gameService, Random random, int size) {
+        List<CardPattern> patterns = new ArrayList<>(size);
+        for (List<Card> play : plays(random, size)) {
+            CardPattern pattern = gameService.analyzePattern(play, LEVEL);
+            if (pattern != null) patterns.add(pattern);
+        }
+        return patterns;
+    }
+    
+    private static List<List<Card>> playsFromHand(List<Card> hand) {
+        Map<Integer, List<Card>> byNumber = new TreeMap<>();
+        for (Card card : hand) {
+            byNumber.computeIfAbsent(card.getNumber(), k -> new ArrayList<>()).add(card);
+        }
+        
+        List<List<Card>> plays = new ArrayList<>();
+        for (List<Card> group : byNumber.values()) {
+            for (int n = 1; n <= group.size(); n++) {
+                plays.add(new ArrayList<>(group.subList(0, n)));
+            }
+        }
+        addRuns(plays, byNumber, 5, 1);
+        addRuns(plays, byNumber, 3, 2);
+        addRuns(plays, byNumber, 2, 3);
+        return plays;
+    }
+    
+    private static void addRuns(List<List<Card>> plays, Map<Integer, List<Card>> byNumber, int length, int groupSize) {
+        for (int start = 1; start + length - 1 <= 14; start++) {
+            List<Card> run = new ArrayList<>();
+            for (int number = start; number < start + length; number++) {
+                List<Card> group = byNumber.get(number);
+                if (group == null || group.size() < groupSize) {
+                    run = null;
+                    break;
+                }
+                run.addAll(group.subList(0, groupSize));
+            }
+            if (run != null) plays.add(run);
+        }
+    }
+}
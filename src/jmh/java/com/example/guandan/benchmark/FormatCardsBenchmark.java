@@ -0,0 +1,28 @@
+package com.example.guandan.benchmark;
+
+import com.example.guandan.model.*;
+import com.example.guandan.service.GameStateService;
+import org.openjdk.jmh.annotations.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatCardsBenchmark {
+    
+    private List<Card> hand;
+    
+    @Setup
+    public void setup() {
+        hand = BenchmarkData.dealtRoom(new Random(42)).getPlayers()[0].getHand();
+    }
+    
+    @Benchmark
+    public List<Map<String, Object>> formatHand() {
+        return GameStateService.formatCards(hand);
+    }
+}
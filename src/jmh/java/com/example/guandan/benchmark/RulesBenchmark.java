@@ -0,0 +1,60 @@
+package com.example.guandan.benchmark;
+
+import com.example.guandan.model.*;
+import com.example.guandan.service.GameService;
+import org.openjdk.jmh.annotations.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+    
+    private static final int SIZE = 1024; // power of two so the cursor can wrap with a mask
+    
+    private final GameService gameService = new GameService();
+    private List<List<Card>> plays;
+    private List<CardPattern> patterns;
+    private List<Card> deck;
+    private int cursor;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        plays = BenchmarkData.plays(random, SIZE);
+        patterns = BenchmarkData.patterns(gameService, random, SIZE);
+        while (patterns.size() < SIZE) {
+            patterns.add(patterns.get(patterns.size() % 64));
+        }
+        deck = BenchmarkData.deck();
+    }
+    
+    @Benchmark
+    public CardPattern analyzePattern() {
+        return gameService.analyzePattern(plays.get(next()), BenchmarkData.LEVEL);
+    }
+    
+    @Benchmark
+    public boolean canBeat() {
+        int i = next();
+        return patterns.get(i).canBeat(patterns.get((i + 1) & (SIZE - 1)), BenchmarkData.LEVEL);
+    }
+    
+    @Benchmark
+    public int getRank() {
+        int sum = 0;
+        for (int i = 0; i < deck.size(); i++) {
+            sum += deck.get(i).getRank(BenchmarkData.LEVEL);
+        }
+        return sum;
+    }
+    
+    private int next() {
+        cursor = (cursor + 1) & (SIZE - 1);
+        return cursor;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.guandan.benchmark;
+
+import com.example.guandan.model.*;
+import com.example.guandan.service.GameService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Same serializer RedisConfig installs for room values
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    
+    private final GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
+    private GameRoom room;
+    private byte[] bytes;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        room = BenchmarkData.dealtRoom(random);
+        List<Card> lead = BenchmarkData.plays(random, 1).get(0);
+        room.setLastPattern(new GameService().analyzePattern(lead, BenchmarkData.LEVEL));
+        room.getCurrentRoundCards().put(0, lead);
+        bytes = serializer.serialize(room);
+    }
+    
+    @Benchmark
+    public byte[] serializeRoom() {
+        return serializer.serialize(room);
+    }
+    
+    @Benchmark
+    public Object deserializeRoom() {
+        return serializer.deserialize(bytes);
+    }
+    
+    @Benchmark
+    public Object roundTripRoom() {
+        return serializer.deserialize(serializer.serialize(room));
+    }
+}
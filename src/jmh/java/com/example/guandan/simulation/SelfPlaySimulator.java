@@ -0,0 +1,194 @@
+package com.example.guandan.simulation;
+
+import com.example.guandan.model.*;
+import com.example.guandan.service.GameService;
+import com.example.guandan.service.MoveGenerator;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Headless self-play: complete games (deal, play to the end, finishGame and the level upgrade) run
+// through GameService in memory, without Spring, Redis, MySQL or sockets. Games are spread over a
+// fork/join pool; game i is dealt from a seed derived from (seed, i) and starts from a fresh
+// room, so a seed always produces the same checksum however the work is split. That makes a run
+// both an engine throughput benchmark and a regression oracle for rule changes.
+//
+// Lives in the jmh source set, so it is built only with the jmh profile and never ships in the jar.
+// The profile adds src/jmh/java as a main source root, so it compiles into target/classes, and a
+// run needs nothing else on the classpath:
+// mvn -Pjmh compile
+// java -cp target/classes com.example.guandan.simulation.SelfPlaySimulator --games=100000 --seed=1
+public class SelfPlaySimulator {
+    
+    private static final int MAX_TURNS = 2000;
+    private static final int LEAF_GAMES = 64;
+    private static final int DECK_SIZE = 108;
+    
+    private final GameService gameService;
+    private final MoveGenerator moveGenerator;
+    private final int level;
+    private final double explore; // chance of a random legal move instead of the greedy one
+    
+    public SelfPlaySimulator(GameService gameService, MoveGenerator moveGenerator, int level, double explore) {
+        this.gameService = gameService;
+        this.moveGenerator = moveGenerator;
+        this.level = level;
+        this.explore = explore;
+    }
+    
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        long games = Long.parseLong(options.getOrDefault("games", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int level = Integer.parseInt(options.getOrDefault("level", "2"));
+        double explore = Double.parseDouble(options.getOrDefault("explore", "0.1"));
+        int parallelism = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        
+        GameService gameService = new GameService();
+        SelfPlaySimulator simulator = new SelfPlaySimulator(gameService, new MoveGenerator(gameService), level, explore);
+        
+        long start = System.nanoTime();
+        SimulationStats stats = simulator.run(games, seed, parallelism);
+        long wall = System.nanoTime() - start;
+        
+        stats.report(wall).forEach((key, value) -> System.out.println(key + ": "
+                + (value instanceof long[] array ? Arrays.toString(array) : value)));
+        if (!stats.isClean()) System.exit(1);
+    }
+    
+    public SimulationStats run(long games, long seed, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new Batch(seed, 0, games));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @SuppressWarnings("serial") // never serialized; holds the simulator
+    private final class Batch extends RecursiveTask<SimulationStats> {
+        private final long seed;
+        private final long from;
+        private final long to;
+        
+        private Batch(long seed, long from, long to) {
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= LEAF_GAMES) {
+                SimulationStats stats = new SimulationStats();
+                long allocatedBefore = allocatedBytes();
+                for (long game = from; game < to; game++) {
+                    play(seed * 0x9E3779B97F4A7C15L + game, stats);
+                }
+                long allocatedAfter = allocatedBytes();
+                stats.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+                return stats;
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(seed, from, middle);
+            left.fork();
+            SimulationStats stats = new Batch(seed, middle, to).compute();
+            stats.merge(left.join());
+            return stats;
+        }
+    }
+    
+    private void play(long gameSeed, SimulationStats stats) {
+        SplittableRandom random = new SplittableRandom(~gameSeed);
+        GameRoom room = new GameRoom();
+        room.setRoomId("SIM");
+        room.setGameType("SINGLE");
+        room.setLevel(level);
+        for (int i = 0; i < 4; i++) {
+            room.getPlayers()[i] = new GameRoom.Player((long) i, "sim" + i, i);
+        }
+        
+        long t0 = System.nanoTime();
+        gameService.initGame(room, gameSeed);
+        stats.dealNanos += System.nanoTime() - t0;
+        
+        int turns = 0;
+        int played = 0;
+        while (!room.isFinished()) {
+            if (++turns > MAX_TURNS) {
+                stats.stuck++;
+                return;
+            }
+            int seat = room.getCurrentPlayer();
+            
+            long t1 = System.nanoTime();
+            List<Card> cards = chooseMove(room, seat, random);
+            long t2 = System.nanoTime();
+            boolean accepted = gameService.playCards(room, seat, cards);
+            stats.ruleNanos += System.nanoTime() - t2;
+            stats.moveNanos += t2 - t1;
+            
+            if (!accepted) {
+                stats.rejected++;
+                return;
+            }
+            CardPattern.PatternType type = cards.isEmpty()
+                    ? CardPattern.PatternType.PASS : room.getLastPattern().getType();
+            stats.patterns[type.ordinal()]++;
+            played += cards.size();
+        }
+        
+        int held = 0;
+        for (GameRoom.Player player : room.getPlayers()) {
+            held += player.getHand().size();
+        }
+        if (held + played != DECK_SIZE) stats.invariantViolations++;
+        
+        int winner = room.getFinishedPlayers().get(0);
+        int upgrade = room.getLevel() - level;
+        stats.games++;
+        stats.turns += turns;
+        stats.cardsPlayed += played;
+        stats.teamWins[winner % 2]++;
+        if (upgrade >= 1 && upgrade <= 3) stats.upgrades[upgrade]++;
+        stats.checksum += outcomeHash(room, turns);
+    }
+    
+    private List<Card> chooseMove(GameRoom room, int seat, SplittableRandom random) {
+        if (explore > 0 && random.nextDouble() < explore) {
+            List<CardPattern> moves = moveGenerator.legalMoves(room, seat);
+            // passing is one more option whenever there is a play to follow
+            int options = moves.size() + (room.getLastPattern() != null ? 1 : 0);
+            if (options > 0) {
+                int pick = random.nextInt(options);
+                return pick < moves.size() ? new ArrayList<>(moves.get(pick).getCards()) : new ArrayList<>();
+            }
+        }
+        return moveGenerator.greedyMove(room, seat);
+    }
+    
+    private static long outcomeHash(GameRoom room, int turns) {
+        long hash = turns;
+        for (int seat : room.getFinishedPlayers()) {
+            hash = hash * 31 + seat;
+        }
+        hash = hash * 31 + room.getLevel();
+        // mix so that summing hashes does not cancel out
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+    
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
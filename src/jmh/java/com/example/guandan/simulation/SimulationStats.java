@@ -0,0 +1,96 @@
+package com.example.guandan.simulation;
+
+import com.example.guandan.model.CardPattern;
+import java.util.*;
+
+// Counters of one batch of simulated games; batches are merged up the fork/join tree. Every
+// field is order-independent so the totals of a seed do not depend on how the work was split.
+public class SimulationStats {
+    
+    private static final CardPattern.PatternType[] TYPES = CardPattern.PatternType.values();
+    
+    long games;
+    long turns;
+    long cardsPlayed;
+    long rejected; // plays the rules refused although the generator offered them
+    long stuck; // games that hit the turn limit
+    long invariantViolations; // cards lost or duplicated at the end of a game
+    long checksum; // sum of per-game outcome hashes, the regression fingerprint of a seed
+    final long[] teamWins = new long[2];
+    final long[] upgrades = new long[4]; // games won by 1, 2 or 3 levels
+    final long[] patterns = new long[TYPES.length];
+    long dealNanos;
+    long moveNanos;
+    long ruleNanos;
+    long allocatedBytes = -1; // -1 when the JVM cannot measure thread allocation
+    
+    void merge(SimulationStats other) {
+        games += other.games;
+        turns += other.turns;
+        cardsPlayed += other.cardsPlayed;
+        rejected += other.rejected;
+        stuck += other.stuck;
+        invariantViolations += other.invariantViolations;
+        checksum += other.checksum;
+        for (int i = 0; i < teamWins.length; i++) teamWins[i] += other.teamWins[i];
+        for (int i = 0; i < upgrades.length; i++) upgrades[i] += other.upgrades[i];
+        for (int i = 0; i < patterns.length; i++) patterns[i] += other.patterns[i];
+        dealNanos += other.dealNanos;
+        moveNanos += other.moveNanos;
+        ruleNanos += other.ruleNanos;
+        allocatedBytes = allocatedBytes < 0 || other.allocatedBytes < 0 ? -1 : allocatedBytes + other.allocatedBytes;
+    }
+    
+    public long getGames() {
+        return games;
+    }
+    
+    public long getChecksum() {
+        return checksum;
+    }
+    
+    // problems a rules change must not introduce
+    public boolean isClean() {
+        return rejected == 0 && stuck == 0 && invariantViolations == 0;
+    }
+    
+    public Map<String, Object> report(long wallNanos) {
+        double seconds = wallNanos / 1e9;
+        long phaseNanos = Math.max(1, dealNanos + moveNanos + ruleNanos);
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("games", games);
+        report.put("seconds", seconds);
+        report.put("games_per_second", games / seconds);
+        report.put("turns_per_second", turns / seconds);
+        report.put("turns_per_game", games == 0 ? 0 : (double) turns / games);
+        if (allocatedBytes >= 0) {
+            report.put("allocated_mb_per_second", allocatedBytes / 1e6 / seconds);
+            report.put("allocated_kb_per_game", games == 0 ? 0 : allocatedBytes / 1e3 / games);
+        }
+        
+        // where the CPU time of the rules engine goes
+        Map<String, String> hotspots = new LinkedHashMap<>();
+        hotspots.put("deal", percent(dealNanos, phaseNanos));
+        hotspots.put("move_generation", percent(moveNanos, phaseNanos));
+        hotspots.put("play_validation", percent(ruleNanos, phaseNanos));
+        report.put("hotspots", hotspots);
+        
+        Map<String, Long> played = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            if (patterns[i] > 0) played.put(TYPES[i].name(), patterns[i]);
+        }
+        report.put("patterns", played);
+        report.put("team_wins", teamWins.clone());
+        report.put("upgrades", Arrays.copyOfRange(upgrades, 1, upgrades.length));
+        report.put("rejected", rejected);
+        report.put("stuck", stuck);
+        report.put("invariant_violations", invariantViolations);
+        report.put("checksum", Long.toHexString(checksum));
+        return report;
+    }
+    
+    private static String percent(long part, long whole) {
+        return String.format("%.1f%%", 100.0 * part / whole);
+    }
+}
@@ -2,8 +2,10 @@ package com.example.guandan;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class GuandanGameApplication {
     public static void main(String[] args) {
         SpringApplication.run(GuandanGameApplication.class, args);
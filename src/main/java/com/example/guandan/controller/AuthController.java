@@ -3,6 +3,7 @@ package com.example.guandan.controller;
 import com.example.guandan.entity.User;
 import com.example.guandan.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -46,7 +47,13 @@ public class AuthController {
             return response;
         }
         
-        User user = userService.register(username, password);
+        User user;
+        try {
+            user = userService.register(username, password);
+        } catch (DuplicateKeyException e) {
+            response.put("error", "Username already exists");
+            return response;
+        }
         response.put("username", user.getUsername());
         return response;
     }
@@ -13,6 +13,11 @@ public class GameController {
     private final RoomService roomService;
     private final GameService gameService;
     private final UserService userService;
+    private final RoomExecutor roomExecutor;
+    private final GameStateService gameStateService;
+    private final PollRateLimiter pollRateLimiter;
+    private final BotService botService;
+    private final MatchmakingService matchmakingService;
     
     @PostMapping("/new_game")
     public Map<String, Object> newGame(@RequestBody Map<String, Object> request) {
@@ -27,30 +32,43 @@ public class GameController {
     @PostMapping("/join_game/{token}")
     public Map<String, Object> joinGame(@PathVariable String token, @RequestBody Map<String, String> request) {
         String username = request.get("username");
+        if (!roomService.exists(token)) return roomNotFound();
         
-        var user = userService.findByUsername(username);
-        if (user == null) {
-            user = userService.register(username, "default");
-        }
+        var user = userService.findOrRegister(username);
         
-        int seat = roomService.addPlayer(token, user.getId(), username);
+        Long userId = user.getId();
+        int seat = roomExecutor.call(token, () -> {
+            int joined = roomService.addPlayer(token, userId, username);
+            
+            GameRoom room = roomService.getRoom(token);
+            if (room == null) return -1;
+            if (joined >= 0 && "SINGLE".equals(room.getGameType())) {
+                botService.fillSeats(room);
+            }
+            if (roomService.isRoomFull(token) && !room.isStarted()) {
+                long since = room.getSeq();
+                gameService.initGame(room);
+                if (roomService.advance(room, -1, since)) {
+                    botService.onTurn(room);
+                }
+            }
+            return joined;
+        });
         
         Map<String, Object> response = new HashMap<>();
         response.put("player_number", seat);
         
-        GameRoom room = roomService.getRoom(token);
-        if (roomService.isRoomFull(token) && !room.isStarted()) {
-            room.setFirstPlayer(new Random().nextInt(4));
-            gameService.initGame(room);
-            roomService.saveRoom(room);
-        }
-        
         return response;
     }
     
     @GetMapping("/get_game_state/{token}")
     public Map<String, Object> getGameState(@PathVariable String token) {
-        GameRoom room = roomService.getRoom(token);
+        if (!roomService.exists(token)) return roomNotFound();
+        return pollRateLimiter.poll(token, () -> roomExecutor.call(token, () -> gameState(roomService.getRoom(token))));
+    }
+    
+    private Map<String, Object> gameState(GameRoom room) {
+        if (room == null) return roomNotFound();
         Map<String, Object> response = new HashMap<>();
         
         if (room.isFinished()) {
@@ -83,62 +101,50 @@ public class GameController {
         return response;
     }
     
-    @GetMapping("/get_player_game_state/{token}/{player_id}")
-    public Map<String, Object> getPlayerGameState(@PathVariable String token, @PathVariable int player_id) {
-        GameRoom room = roomService.getRoom(token);
-        Map<String, Object> response = new HashMap<>();
-        
-        if (room.isFinished()) {
-            response.put("finished", true);
-            response.put("rank", room.getRanks());
-            return response;
-        }
-        
-        if (room.isPaused()) {
-            response.put("started", true);
-            response.put("paused", true);
-            response.put("player_comp", formatPlayerComp(room));
+    // Seed and moves of the room's finished game, enough to replay it exactly. A running game's log
+    // is withheld, since its seed reveals every hand
+    @GetMapping("/game_log/{token}")
+    public Map<String, Object> getGameLog(@PathVariable String token) {
+        if (!roomService.exists(token)) return roomNotFound();
+        return roomExecutor.call(token, () -> {
+            GameRoom room = roomService.getRoom(token);
+            Map<String, Object> response = new HashMap<>();
+            if (room == null || room.getLog() == null || !room.isFinished()) {
+                response.put("log", null);
+                return response;
+            }
+            byte[] encoded = room.getLog().encode();
+            response.put("log", Base64.getEncoder().encodeToString(encoded));
+            response.put("bytes", encoded.length);
+            response.put("actions", room.getLog().getSize());
             return response;
-        }
-        
-        response.put("turn", room.getCurrentPlayer());
-        response.put("deck", formatCards(room.getPlayers()[player_id].getHand()));
-        response.put("comp", formatComp(room));
-        response.put("started", room.isStarted());
-        response.put("player_comp", formatPlayerComp(room));
-        response.put("finished_players", room.getFinishedPlayers());
-        response.put("finished", false);
-        response.put("paused", false);
-        
-        return response;
+        });
     }
     
-    private List<Map<String, Object>> formatCards(List<Card> cards) {
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Card card : cards) {
-            Map<String, Object> cardMap = new HashMap<>();
-            cardMap.put("color", card.getColor());
-            cardMap.put("number", card.getNumber());
-            cardMap.put("selected", card.isSelected());
-            result.add(cardMap);
-        }
-        return result;
+    @GetMapping("/bot_stats")
+    public Map<String, Object> getBotStats() {
+        return botService.stats();
     }
     
-    private List<Object> formatComp(GameRoom room) {
-        List<Object> result = new ArrayList<>();
-        for (int i = 0; i < 4; i++) {
-            List<Card> cards = room.getCurrentRoundCards().get(i);
-            if (cards == null || cards.isEmpty()) {
-                result.add(null);
-            } else {
-                result.add(formatCards(cards));
-            }
-        }
-        return result;
+    @GetMapping("/match_stats")
+    public Map<String, Object> getMatchStats() {
+        return matchmakingService.stats();
     }
     
-    private List<Object> formatPlayerComp(GameRoom room) {
-        return formatComp(room);
+    @GetMapping("/get_player_game_state/{token}/{player_id}")
+    public Map<String, Object> getPlayerGameState(@PathVariable String token, @PathVariable int player_id,
+                                                  @RequestParam(required = false) Long since) {
+        if (!roomService.exists(token)) return roomNotFound();
+        return pollRateLimiter.poll(token + ":" + player_id, since, () -> roomExecutor.call(token, () -> {
+            GameRoom room = roomService.getRoom(token);
+            return room != null ? gameStateService.playerState(room, player_id, since) : roomNotFound();
+        }));
+    }
+    
+    // for tokens that name no room, which are turned away before reaching a room's actor
+    private static Map<String, Object> roomNotFound() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", "Room not found");
+        return response;
     }
 }
@@ -0,0 +1,65 @@
+package com.example.guandan.controller;
+
+import com.example.guandan.entity.User;
+import com.example.guandan.service.LeaderboardService;
+import com.example.guandan.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import java.util.*;
+
+@RestController
+@RequiredArgsConstructor
+public class LeaderboardController {
+    
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_AROUND = 50;
+    
+    private final LeaderboardService leaderboardService;
+    private final UserService userService;
+    
+    @GetMapping("/leaderboard")
+    public Map<String, Object> top(@RequestParam(defaultValue = "global") String board,
+                                   @RequestParam(defaultValue = "10") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        LeaderboardService.Board which = board(board);
+        if (which == null) {
+            response.put("error", "Unknown board");
+            return response;
+        }
+        response.put("board", board);
+        response.put("standings", leaderboardService.top(which, Math.max(1, Math.min(limit, MAX_LIMIT))));
+        return response;
+    }
+    
+    // the user's rank with k players above and below
+    @GetMapping("/leaderboard/{username}")
+    public Map<String, Object> around(@PathVariable String username,
+                                      @RequestParam(defaultValue = "global") String board,
+                                      @RequestParam(defaultValue = "5") int k) {
+        Map<String, Object> response = new HashMap<>();
+        LeaderboardService.Board which = board(board);
+        if (which == null) {
+            response.put("error", "Unknown board");
+            return response;
+        }
+        User user = userService.findByUsername(username);
+        if (user == null) {
+            response.put("error", "User not found");
+            return response;
+        }
+        List<LeaderboardService.Standing> standings = leaderboardService.around(which, user.getId(), Math.max(0, Math.min(k, MAX_AROUND)));
+        response.put("board", board);
+        response.put("rank", standings.stream().filter(s -> s.userId().equals(user.getId()))
+                .map(LeaderboardService.Standing::rank).findFirst().orElse(null));
+        response.put("standings", standings);
+        return response;
+    }
+    
+    private static LeaderboardService.Board board(String name) {
+        try {
+            return LeaderboardService.Board.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
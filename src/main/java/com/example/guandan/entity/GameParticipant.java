@@ -0,0 +1,13 @@
+package com.example.guandan.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+public class GameParticipant {
+    private Long userId;
+    private Long gameId;
+    private LocalDateTime createdAt;
+    private Integer seat;
+    private Integer result; // levels won (positive) or lost (negative) by the player's team
+}
@@ -0,0 +1,123 @@
+package com.example.guandan.handler;
+
+import com.example.guandan.model.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Compact wire format for sessions that negotiate the "guandan-binary" subprotocol.
+// Every frame starts with a one-byte message id; a card is its CardCodec face (one byte) and a
+// hand is two 54-bit face masks (first and second copy). Multi-byte values are big-endian.
+//
+// client -> server                          server -> client
+// 0x01 PING                                 0x81 PONG
+// 0x02 SYNC  since:long                     0x82 GAME_UPDATE seq:long seat:byte next:byte
+// 0x03 READY state:byte                          pattern:byte(0xFF pass) finished:byte[n] cards:byte[n]
+// 0x04 PLAY  cards:byte[n] (n:byte prefix)  0x83 DECK seq:long first:long second:long
+// 0x05 PASS                                 0x84 ERROR code:short msg:utf8
+public final class BinaryProtocol {
+    
+    public static final String SUBPROTOCOL = "guandan-binary";
+    
+    public static final byte PING = 0x01;
+    public static final byte SYNC = 0x02;
+    public static final byte READY = 0x03;
+    public static final byte PLAY = 0x04;
+    public static final byte PASS = 0x05;
+    
+    public static final byte PONG = (byte) 0x81;
+    public static final byte GAME_UPDATE = (byte) 0x82;
+    public static final byte DECK = (byte) 0x83;
+    public static final byte ERROR = (byte) 0x84;
+    
+    private static final byte PASS_PATTERN = (byte) 0xFF;
+    
+    private BinaryProtocol() {}
+    
+    // Throws BufferUnderflowException for a truncated frame and IllegalArgumentException for one
+    // carrying a card that does not exist; either way the whole message is rejected
+    public static ClientMessage decode(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) return ClientMessage.of(ClientMessage.Kind.UNKNOWN);
+        switch (buffer.get()) {
+            case PING:
+                return ClientMessage.of(ClientMessage.Kind.PING);
+            case SYNC: {
+                ClientMessage message = ClientMessage.of(ClientMessage.Kind.SYNC);
+                message.setSince(buffer.getLong());
+                return message;
+            }
+            case READY: {
+                ClientMessage message = ClientMessage.of(ClientMessage.Kind.READY);
+                message.setState(buffer.get() != 0);
+                return message;
+            }
+            case PLAY: {
+                ClientMessage message = ClientMessage.of(ClientMessage.Kind.PLAY);
+                int n = buffer.get() & 0xFF;
+                List<Card> cards = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    int face = buffer.get() & 0xFF;
+                    if (face >= CardCodec.FACES) throw new IllegalArgumentException("Unknown card face " + face);
+                    cards.add(Card.ofFace(face));
+                }
+                message.setCards(cards);
+                return message;
+            }
+            case PASS:
+                return ClientMessage.of(ClientMessage.Kind.PASS);
+            default:
+                return ClientMessage.of(ClientMessage.Kind.UNKNOWN);
+        }
+    }
+    
+    public static byte[] pong() {
+        return new byte[] {PONG};
+    }
+    
+    public static byte[] gameUpdate(long seq, int seat, int next, CardPattern.PatternType pattern,
+                                    List<Integer> finished, List<Card> cards) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 3 + 1 + finished.size() + 1 + cards.size());
+        buffer.put(GAME_UPDATE).putLong(seq).put((byte) seat).put((byte) next);
+        buffer.put(pattern == null ? PASS_PATTERN : patternCode(pattern));
+        buffer.put((byte) finished.size());
+        for (int s : finished) {
+            buffer.put((byte) s);
+        }
+        putCards(buffer, cards);
+        return buffer.array();
+    }
+    
+    public static byte[] deck(long seq, GameRoom.Player player) {
+        long[] masks = player.getHandMasks();
+        return ByteBuffer.allocate(1 + 8 + 16).put(DECK).putLong(seq).putLong(masks[0]).putLong(masks[1]).array();
+    }
+    
+    public static byte[] error(int code, String msg) {
+        byte[] text = msg.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 2 + text.length).put(ERROR).putShort((short) code).put(text).array();
+    }
+    
+    // wire codes of the pattern types, fixed independently of the enum's declaration order
+    private static byte patternCode(CardPattern.PatternType pattern) {
+        return switch (pattern) {
+            case SINGLE -> 0;
+            case PAIR -> 1;
+            case TRIPLE -> 2;
+            case STRAIGHT -> 3;
+            case TRIPLE_STRAIGHT -> 4;
+            case PAIR_STRAIGHT -> 5;
+            case BOMB -> 6;
+            case KING_BOMB -> 7;
+            case FULL_HOUSE -> 8;
+            case STRAIGHT_FLUSH -> 9;
+            case PASS -> PASS_PATTERN;
+        };
+    }
+    
+    private static void putCards(ByteBuffer buffer, List<Card> cards) {
+        buffer.put((byte) cards.size());
+        for (Card card : cards) {
+            buffer.put((byte) CardCodec.face(card));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.guandan.handler;
+
+import com.example.guandan.model.Card;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import java.util.*;
+
+// Typed inbound message, decoded from either the JSON protocol or BinaryProtocol
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ClientMessage {
+    private String type;
+    private String action;
+    private String roomId;
+    private String username;
+    private Integer level;
+    private Boolean state;
+    private List<Card> cards;
+    private Long since;
+    private String before; // get_data: cursor of the game_list page to continue from
+    private Integer limit;
+    @JsonIgnore
+    private Kind kind;
+    
+    public enum Kind {
+        PING, GET_DATA, SYNC, PLAY, PASS, ROOM, READY, MATCH, CANCEL_MATCH, UNKNOWN
+    }
+    
+    public static ClientMessage of(Kind kind) {
+        ClientMessage message = new ClientMessage();
+        message.kind = kind;
+        return message;
+    }
+    
+    // JSON messages carry no explicit kind; it follows from which fields are present
+    public Kind getKind() {
+        if (kind != null) return kind;
+        if ("ping".equals(type)) return Kind.PING;
+        if ("get_data".equals(action)) return Kind.GET_DATA;
+        if ("sync".equals(action)) return Kind.SYNC;
+        if ("match".equals(action)) return Kind.MATCH;
+        if ("cancel_match".equals(action)) return Kind.CANCEL_MATCH;
+        if ("pass".equals(action)) return Kind.PASS;
+        if ("play_cards".equals(action)) return Kind.PLAY;
+        if (roomId != null) return Kind.ROOM;
+        if (state != null) return Kind.READY;
+        if (cards != null) return Kind.PLAY;
+        return Kind.UNKNOWN;
+    }
+}
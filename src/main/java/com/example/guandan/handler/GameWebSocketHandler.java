@@ -1,58 +1,106 @@
 package com.example.guandan.handler;
 
+import com.example.guandan.entity.GameParticipant;
 import com.example.guandan.entity.PlayerStats;
+import com.example.guandan.model.Card;
+import com.example.guandan.model.CardPattern;
 import com.example.guandan.model.GameRoom;
 import com.example.guandan.service.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import java.nio.BufferUnderflowException;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
-public class GameWebSocketHandler implements WebSocketHandler {
+public class GameWebSocketHandler implements WebSocketHandler, SubProtocolCapable {
+    
+    private static final int GAME_PAGE_SIZE = 20;
+    private static final int MAX_GAME_PAGE_SIZE = 100;
+    private static final String QUEUED_USER = "queuedUser"; // session attribute while matchmaking
     
     private final RoomService roomService;
     private final GameService gameService;
+    private final GameStateService gameStateService;
     private final UserService userService;
+    private final RoomExecutor roomExecutor;
+    private final SessionRegistry sessionRegistry;
+    private final BotService botService;
+    private final MatchmakingService matchmakingService;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, String> sessionToRoom = new ConcurrentHashMap<>();
+    private final Map<String, RoomInfoFrame> roomInfoFrames = new ConcurrentHashMap<>();
+    private final Map<Long, WebSocketSession> queuedSessions = new ConcurrentHashMap<>();
+    
+    // encoded room info for one room version; shared by every recipient until the room changes
+    private record RoomInfoFrame(long version, TextMessage frame) {}
     
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        sessions.put(session.getId(), session);
+        sessionRegistry.register(session);
+    }
+    
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryProtocol.SUBPROTOCOL);
     }
     
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        String payload = message.getPayload().toString();
-        Map<String, Object> msg = objectMapper.readValue(payload, Map.class);
-        
-        String type = (String) msg.get("type");
-        
-        if ("ping".equals(type)) {
-            sendMessage(session, Map.of("type", "pong"));
-            return;
+        ClientMessage msg;
+        if (message instanceof BinaryMessage binary) {
+            try {
+                msg = BinaryProtocol.decode(binary.getPayload());
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                sendError(session, 3002, "Malformed message");
+                return;
+            }
+        } else {
+            msg = objectMapper.readValue(message.getPayload().toString(), ClientMessage.class);
         }
         
-        String action = (String) msg.get("action");
-        
-        if ("get_data".equals(action)) {
-            handleGetData(session, msg);
-        } else if (msg.containsKey("roomId")) {
-            handleRoomAction(session, msg);
-        } else if (msg.containsKey("state")) {
-            handleReadyState(session, msg);
-        } else if (msg.containsKey("cards")) {
-            handlePlayCards(session, msg);
+        switch (msg.getKind()) {
+            case PING:
+                SessionSender sender = sessionRegistry.senderOf(session);
+                if (sender != null && sender.isBinary()) {
+                    sender.send(new BinaryMessage(BinaryProtocol.pong()));
+                } else {
+                    sendMessage(session, Map.of("type", "pong"));
+                }
+                break;
+            case GET_DATA:
+                handleGetData(session, msg);
+                break;
+            case SYNC:
+                handleSync(session, msg);
+                break;
+            case PLAY:
+            case PASS:
+                handlePlayCards(session, msg);
+                break;
+            case ROOM:
+                handleRoomAction(session, msg);
+                break;
+            case READY:
+                handleReadyState(session, msg);
+                break;
+            case MATCH:
+                handleMatch(session, msg);
+                break;
+            case CANCEL_MATCH:
+                handleCancelMatch(session);
+                break;
+            default:
+                break;
         }
     }
     
-    private void handleGetData(WebSocketSession session, Map<String, Object> msg) throws Exception {
-        String username = (String) msg.get("username");
+    private void handleGetData(WebSocketSession session, ClientMessage msg) throws Exception {
+        String username = msg.getUsername();
         var user = userService.findByUsername(username);
         
         if (user == null) {
@@ -65,90 +113,318 @@ public class GameWebSocketHandler implements WebSocketHandler {
         response.put("rate", stats.getWinRate().doubleValue());
         response.put("game_num", stats.getTotalGames());
         response.put("score", stats.getTotalScore());
-        response.put("game_list", new ArrayList<>());
+        
+        int limit = Math.min(msg.getLimit() != null && msg.getLimit() > 0 ? msg.getLimit() : GAME_PAGE_SIZE, MAX_GAME_PAGE_SIZE);
+        List<GameParticipant> games = userService.getRecentGames(user.getId(), parseCursor(msg.getBefore()), limit);
+        List<Map<String, Object>> gameList = new ArrayList<>(games.size());
+        for (GameParticipant game : games) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("game_id", game.getGameId());
+            entry.put("time", game.getCreatedAt().toString());
+            entry.put("seat", game.getSeat());
+            entry.put("result", game.getResult());
+            gameList.add(entry);
+        }
+        response.put("game_list", gameList);
+        // cursor of the next page, absent on the last one
+        if (games.size() == limit) {
+            GameParticipant last = games.get(games.size() - 1);
+            response.put("next", last.getCreatedAt() + "/" + last.getGameId());
+        }
         
         sendMessage(session, response);
     }
     
-    private void handleRoomAction(WebSocketSession session, Map<String, Object> msg) throws Exception {
-        String roomId = (String) msg.get("roomId");
-        String type = (String) msg.get("type");
-        String username = (String) msg.get("username");
-        
-        var user = userService.findByUsername(username);
-        if (user == null) {
-            user = userService.register(username, "default");
+    private static GameParticipant parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            String[] parts = cursor.split("/", 2);
+            GameParticipant after = new GameParticipant();
+            after.setCreatedAt(LocalDateTime.parse(parts[0]));
+            after.setGameId(Long.parseLong(parts[1]));
+            return after;
+        } catch (RuntimeException e) {
+            return null;
         }
+    }
+    
+    private void handleRoomAction(WebSocketSession session, ClientMessage msg) throws Exception {
+        String roomId = msg.getRoomId();
+        String type = msg.getType();
+        String username = msg.getUsername();
+        
+        var user = userService.findOrRegister(username);
+        Long userId = user.getId();
         
         if (roomId == null || roomId.isEmpty()) {
             String gameType = "SINGLE".equals(type) ? "SINGLE" : "MULTIPLE";
-            int level = msg.containsKey("level") ? (Integer) msg.get("level") : 2;
-            GameRoom room = roomService.createRoom(gameType, level, user.getId());
-            roomService.addPlayer(room.getRoomId(), user.getId(), username);
-            sessionToRoom.put(session.getId(), room.getRoomId());
-            
-            sendMessage(session, Map.of("token", room.getRoomId()));
+            int level = msg.getLevel() != null ? msg.getLevel() : 2;
+            GameRoom room = roomService.createRoom(gameType, level, userId);
+            roomExecutor.execute(room.getRoomId(), () -> {
+                int seat = roomService.addPlayer(room.getRoomId(), userId, username);
+                bindOrLeaveOffline(session, room.getRoomId(), seat);
+                
+                sendMessage(session, Map.of("token", room.getRoomId()));
+                if ("SINGLE".equals(gameType)) {
+                    // the copy addPlayer left on the heap, which may have been reloaded
+                    GameRoom current = roomService.getRoom(room.getRoomId());
+                    botService.fillSeats(current);
+                    broadcastRoomInfo(room.getRoomId());
+                    startIfReady(current);
+                }
+            });
+        } else if (!roomService.exists(roomId)) {
+            sendError(session, 3001, "Room not found");
         } else {
-            GameRoom room = roomService.getRoom(roomId);
-            if (room == null) {
-                sendMessage(session, Map.of("code", 3001, "msg", "Room not found"));
-                return;
-            }
-            
-            if (roomService.isRoomFull(roomId)) {
-                sendMessage(session, Map.of("code", 3001, "msg", "Room is full"));
-                return;
-            }
-            
-            roomService.addPlayer(roomId, user.getId(), username);
-            sessionToRoom.put(session.getId(), roomId);
-            broadcastRoomInfo(roomId);
-            
-            if (roomService.allPlayersReady(roomId)) {
-                room.setFirstPlayer(new Random().nextInt(4));
-                gameService.initGame(room);
+            roomExecutor.execute(roomId, () -> joinRoom(session, roomId, userId, username));
+        }
+    }
+    
+    private void handleMatch(WebSocketSession session, ClientMessage msg) throws Exception {
+        String username = msg.getUsername();
+        var user = userService.findOrRegister(username);
+        Long userId = user.getId();
+        
+        // a newer session of a queued user takes over its place in the queue
+        queuedSessions.put(userId, session);
+        session.getAttributes().put(QUEUED_USER, userId);
+        matchmakingService.join(userId, username);
+        sendMessage(session, Map.of("match", "queued"));
+    }
+    
+    private void handleCancelMatch(WebSocketSession session) throws Exception {
+        if (session.getAttributes().remove(QUEUED_USER) instanceof Long userId && queuedSessions.remove(userId, session)) {
+            matchmakingService.leave(userId);
+        }
+        sendMessage(session, Map.of("match", "cancelled"));
+    }
+    
+    // runs on the new room's actor; queued players get the room as if they had joined it
+    @EventListener
+    public void onTableFormed(MatchmakingService.TableFormed table) throws Exception {
+        GameRoom room = table.room();
+        for (MatchmakingService.Seated seated : table.players()) {
+            WebSocketSession session = queuedSessions.remove(seated.userId());
+            if (session != null && sessionRegistry.bind(session, room.getRoomId(), seated.seat())) {
+                session.getAttributes().remove(QUEUED_USER);
+                sendMessage(session, Map.of("token", room.getRoomId(), "seat", seated.seat()));
+            } else {
+                room.getPlayers()[seated.seat()].setOnline(false);
                 roomService.saveRoom(room);
-                broadcastToRoom(roomId, Map.of("game_state", true));
             }
         }
+        broadcastRoomInfo(room.getRoomId());
+        startIfReady(room);
     }
     
-    private void handleReadyState(WebSocketSession session, Map<String, Object> msg) throws Exception {
-        String roomId = sessionToRoom.get(session.getId());
-        if (roomId == null) return;
-        
+    private void joinRoom(WebSocketSession session, String roomId, Long userId, String username) throws Exception {
         GameRoom room = roomService.getRoom(roomId);
-        boolean ready = (Boolean) msg.get("state");
+        if (room == null) {
+            sendError(session, 3001, "Room not found");
+            return;
+        }
         
-        for (int i = 0; i < 4; i++) {
-            if (room.getPlayers()[i] != null && sessions.get(session.getId()) != null) {
-                room.getPlayers()[i].setReady(ready);
-                break;
-            }
+        if (roomService.isRoomFull(roomId)) {
+            sendError(session, 3001, "Room is full");
+            return;
         }
         
-        roomService.saveRoom(room);
+        int seat = roomService.addPlayer(roomId, userId, username);
+        if (seat < 0) {
+            sendError(session, 3001, "Room is full");
+            return;
+        }
+        bindOrLeaveOffline(session, roomId, seat);
         broadcastRoomInfo(roomId);
-        
+        // addPlayer may have reloaded the room after losing a seat to another node
+        startIfReady(roomService.getRoom(roomId));
+    }
+    
+    // A session that closed before its join reached the actor is not bound again; its seat is kept
+    // but marked offline, as its disconnect would have done had it been bound
+    private void bindOrLeaveOffline(WebSocketSession session, String roomId, int seat) {
+        if (seat < 0 || sessionRegistry.bind(session, roomId, seat)) return;
+        GameRoom room = roomService.getRoom(roomId);
+        if (room == null || room.getPlayers()[seat] == null) return;
+        room.getPlayers()[seat].setOnline(false);
+        roomService.saveRoom(room);
+    }
+    
+    private void startIfReady(GameRoom room) throws Exception {
+        String roomId = room.getRoomId();
         if (roomService.allPlayersReady(roomId) && !room.isStarted()) {
-            room.setFirstPlayer(new Random().nextInt(4));
+            long since = room.getSeq();
             gameService.initGame(room);
-            roomService.saveRoom(room);
+            if (!roomService.advance(room, -1, since)) return;
             broadcastToRoom(roomId, Map.of("game_state", true));
+            pushGameEvents(room, since);
+            botService.onTurn(room);
         }
     }
     
-    private void handlePlayCards(WebSocketSession session, Map<String, Object> msg) throws Exception {
-        String roomId = sessionToRoom.get(session.getId());
-        if (roomId == null) return;
+    private void handleReadyState(WebSocketSession session, ClientMessage msg) {
+        SessionRegistry.Binding binding = sessionRegistry.bindingOf(session);
+        if (binding == null) return;
         
+        roomExecutor.execute(binding.roomId(), () -> updateReadyState(session, binding, msg));
+    }
+    
+    private void updateReadyState(WebSocketSession session, SessionRegistry.Binding binding, ClientMessage msg) throws Exception {
+        String roomId = binding.roomId();
+        if (msg.getState() == null) {
+            sendError(session, 3002, "Malformed message");
+            return;
+        }
         GameRoom room = roomService.getRoom(roomId);
-        // Implementation for playing cards would go here
-        // This would parse the cards from msg and call gameService.playCards
+        if (room == null) {
+            sendError(session, 3001, "Room not found");
+            return;
+        }
+        boolean ready = msg.getState();
+        
+        GameRoom.Player player = room.getPlayers()[binding.seat()];
+        if (player != null && player.isReady() != ready && !roomService.setReady(room, binding.seat(), ready)) {
+            return;
+        }
+        broadcastRoomInfo(roomId);
+        startIfReady(room);
+    }
+    
+    private void handlePlayCards(WebSocketSession session, ClientMessage msg) {
+        SessionRegistry.Binding binding = sessionRegistry.bindingOf(session);
+        if (binding == null) return;
+        List<Card> cards = msg.getKind() == ClientMessage.Kind.PASS || msg.getCards() == null
+                ? new ArrayList<>() : msg.getCards();
+        
+        roomExecutor.execute(binding.roomId(), () -> playCards(session, binding, cards));
+    }
+    
+    private void playCards(WebSocketSession session, SessionRegistry.Binding binding, List<Card> cards) throws Exception {
+        String roomId = binding.roomId();
+        GameRoom room = roomService.getRoom(roomId);
+        if (room == null || !room.isStarted() || room.isFinished()) {
+            sendError(session, 3002, "Game is not running");
+            return;
+        }
+        
+        if (room.getCurrentPlayer() != binding.seat()) {
+            sendError(session, 3002, "Not your turn");
+            return;
+        }
+        
+        int[] scores = new int[4];
+        for (int i = 0; i < 4; i++) {
+            scores[i] = room.getPlayers()[i].getScore();
+        }
+        
+        long seq = room.getSeq();
+        if (!gameService.playCards(room, binding.seat(), cards)) {
+            sendError(session, 3002, "Invalid play");
+            return;
+        }
+        if (!roomService.advance(room, binding.seat(), seq)) {
+            sendError(session, 3002, "Game state changed, please sync");
+            return;
+        }
+        broadcastPlay(room, binding.seat(), cards, scores);
+        botService.onTurn(room);
+    }
+    
+    // bot moves are applied on the room's actor, so this runs there like a human play
+    @EventListener
+    public void onBotMove(BotService.BotMove move) throws Exception {
+        broadcastPlay(move.room(), move.seat(), move.cards(), move.scoresBefore());
+    }
+    
+    private void broadcastPlay(GameRoom room, int seat, List<Card> cards, int[] scoresBefore) throws Exception {
+        String roomId = room.getRoomId();
+        // a play always becomes the last pattern, with the reading playCards accepted
+        CardPattern.PatternType pattern = cards.isEmpty()
+                ? CardPattern.PatternType.PASS : room.getLastPattern().getType();
+        broadcastFrame(roomId, encode(gameUpdate(room, seat, cards, pattern)),
+                BinaryProtocol.gameUpdate(room.getSeq(), seat, room.getCurrentPlayer(), pattern,
+                        room.getFinishedPlayers(), cards), null);
+        if (room.isFinished()) {
+            broadcastToRoom(roomId, gameEnd(room, scoresBefore));
+        }
+    }
+    
+    private Map<String, Object> gameUpdate(GameRoom room, int seat, List<Card> cards, CardPattern.PatternType pattern) {
+        Map<String, Object> lastPlay = new HashMap<>();
+        lastPlay.put("player", seat);
+        lastPlay.put("cards", GameStateService.formatCards(cards));
+        lastPlay.put("pattern", pattern != null ? pattern.name() : null);
+        
+        Map<String, Object> update = new HashMap<>();
+        update.put("type", "game_update");
+        update.put("seq", room.getSeq());
+        update.put("current_player", room.getCurrentPlayer());
+        update.put("last_play", lastPlay);
+        update.put("finished_players", room.getFinishedPlayers());
+        return update;
+    }
+    
+    private Map<String, Object> gameEnd(GameRoom room, int[] scoresBefore) {
+        int[] scores = new int[4];
+        for (int i = 0; i < 4; i++) {
+            scores[i] = room.getPlayers()[i].getScore() - scoresBefore[i];
+        }
+        
+        Map<String, Object> end = new HashMap<>();
+        end.put("type", "game_end");
+        end.put("seq", room.getSeq());
+        end.put("ranks", room.getRanks());
+        end.put("scores", scores);
+        end.put("winner_team", room.getFinishedPlayers().get(0) % 2);
+        return end;
+    }
+    
+    // Catch-up for a client that missed pushes: events after its seq, or a snapshot on a gap
+    private void handleSync(WebSocketSession session, ClientMessage msg) {
+        SessionRegistry.Binding binding = sessionRegistry.bindingOf(session);
+        if (binding == null) return;
+        Long since = msg.getSince();
+        
+        roomExecutor.execute(binding.roomId(), () -> {
+            GameRoom room = roomService.getRoom(binding.roomId());
+            if (room == null) return;
+            sendMessage(session, gameStateService.playerState(room, binding.seat(), since));
+        });
+    }
+    
+    // Pushes the game events after since: the public part is encoded once for the whole room,
+    // a freshly dealt hand goes only to its owner
+    private void pushGameEvents(GameRoom room, long since) throws Exception {
+        String roomId = room.getRoomId();
+        Map<String, Object> delta = gameStateService.delta(room, -1, since);
+        if (delta == null) return;
+        broadcastToRoom(roomId, delta);
+        
+        if (!gameStateService.dealtSince(room, since)) return;
+        for (SessionSender sender : sessionRegistry.sessionsIn(roomId)) {
+            SessionRegistry.Binding binding = sessionRegistry.bindingOf(sender.getSession());
+            GameRoom.Player player = binding == null ? null : room.getPlayers()[binding.seat()];
+            if (player == null) continue;
+            if (sender.isBinary()) {
+                sender.send(new BinaryMessage(BinaryProtocol.deck(room.getSeq(), player)));
+            } else {
+                sender.send(encode(Map.of("seq", room.getSeq(), "deck", GameStateService.formatCards(player.getHand()))));
+            }
+        }
     }
     
     private void broadcastRoomInfo(String roomId) throws Exception {
         GameRoom room = roomService.getRoom(roomId);
+        RoomInfoFrame cached = roomInfoFrames.get(roomId);
+        if (cached == null || cached.version() != room.getVersion()) {
+            cached = new RoomInfoFrame(room.getVersion(), encode(roomInfo(room)));
+            roomInfoFrames.put(roomId, cached);
+        }
+        broadcastFrame(roomId, cached.frame(), "room_info");
+    }
+    
+    private Map<String, Object> roomInfo(GameRoom room) {
+        String roomId = room.getRoomId();
         Map<String, Object> roomInfo = new HashMap<>();
         roomInfo.put("roomId", roomId);
         roomInfo.put("hostId", room.getHostId());
@@ -161,45 +437,90 @@ public class GameWebSocketHandler implements WebSocketHandler {
                 playerInfo.put("uid", room.getPlayers()[i].getUserId());
                 playerInfo.put("ready", room.getPlayers()[i].isReady());
                 playerInfo.put("online", room.getPlayers()[i].isOnline());
+                playerInfo.put("bot", room.getPlayers()[i].isBot());
             } else {
                 playerInfo.put("uid", 0);
                 playerInfo.put("ready", false);
                 playerInfo.put("online", false);
+                playerInfo.put("bot", false);
             }
             players.add(playerInfo);
         }
         roomInfo.put("players", players);
-        
-        broadcastToRoom(roomId, roomInfo);
+        return roomInfo;
     }
     
     private void broadcastToRoom(String roomId, Map<String, Object> message) throws Exception {
-        String json = objectMapper.writeValueAsString(message);
-        for (Map.Entry<String, String> entry : sessionToRoom.entrySet()) {
-            if (roomId.equals(entry.getValue())) {
-                WebSocketSession session = sessions.get(entry.getKey());
-                if (session != null && session.isOpen()) {
-                    session.sendMessage(new TextMessage(json));
-                }
+        broadcastFrame(roomId, encode(message), null);
+    }
+    
+    // the frame is encoded once and the same immutable message is queued for every recipient;
+    // frames with a conflation key may be collapsed to the latest one for slow clients
+    private void broadcastFrame(String roomId, TextMessage frame, String conflationKey) {
+        broadcastFrame(roomId, frame, null, conflationKey);
+    }
+    
+    // binary sessions get the binary encoding when there is one; each gets its own BinaryMessage
+    // since a ByteBuffer payload is consumed by the write, but the encoded bytes are shared
+    private void broadcastFrame(String roomId, TextMessage frame, byte[] binaryFrame, String conflationKey) {
+        for (SessionSender sender : sessionRegistry.sessionsIn(roomId)) {
+            if (binaryFrame != null && sender.isBinary()) {
+                sender.send(new BinaryMessage(binaryFrame), conflationKey);
+            } else {
+                sender.send(frame, conflationKey);
             }
         }
     }
     
+    private TextMessage encode(Map<String, Object> message) throws Exception {
+        return new TextMessage(objectMapper.writeValueAsString(message));
+    }
+    
     private void sendMessage(WebSocketSession session, Map<String, Object> message) throws Exception {
-        String json = objectMapper.writeValueAsString(message);
-        session.sendMessage(new TextMessage(json));
+        SessionSender sender = sessionRegistry.senderOf(session);
+        if (sender != null) {
+            sender.send(encode(message));
+        }
+    }
+    
+    private void sendError(WebSocketSession session, int code, String msg) throws Exception {
+        SessionSender sender = sessionRegistry.senderOf(session);
+        if (sender == null) return;
+        if (sender.isBinary()) {
+            sender.send(new BinaryMessage(BinaryProtocol.error(code, msg)));
+        } else {
+            sender.send(encode(Map.of("code", code, "msg", msg)));
+        }
     }
     
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) {
-        sessions.remove(session.getId());
-        sessionToRoom.remove(session.getId());
+        disconnect(session);
     }
     
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
-        sessions.remove(session.getId());
-        sessionToRoom.remove(session.getId());
+        disconnect(session);
+    }
+    
+    private void disconnect(WebSocketSession session) {
+        if (session.getAttributes().remove(QUEUED_USER) instanceof Long userId && queuedSessions.remove(userId, session)) {
+            matchmakingService.leave(userId);
+        }
+        
+        SessionRegistry.Binding binding = sessionRegistry.unregister(session);
+        if (binding == null) return;
+        if (sessionRegistry.sessionsIn(binding.roomId()).isEmpty()) {
+            roomInfoFrames.remove(binding.roomId());
+        }
+        
+        roomExecutor.execute(binding.roomId(), () -> {
+            GameRoom room = roomService.getRoom(binding.roomId());
+            if (room == null || room.getPlayers()[binding.seat()] == null) return;
+            room.getPlayers()[binding.seat()].setOnline(false);
+            roomService.saveRoom(room);
+            broadcastRoomInfo(binding.roomId());
+        });
     }
     
     @Override
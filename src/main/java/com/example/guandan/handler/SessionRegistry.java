@@ -0,0 +1,139 @@
+package com.example.guandan.handler;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Connected sessions indexed both ways: session -> room/seat and room -> sessions, so a room
+// broadcast only touches the sessions seated in that room. Every session is wrapped in a
+// SessionSender so writes never block the caller.
+@Slf4j
+@Component
+public class SessionRegistry {
+    
+    private final Map<String, SessionSender> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Binding> sessionToRoom = new ConcurrentHashMap<>();
+    private final Map<String, Set<SessionSender>> roomSessions = new ConcurrentHashMap<>();
+    private final ExecutorService senderPool;
+    private final int bufferLimit;
+    private final SessionSender.OverflowPolicy overflowPolicy;
+    private final int batchLimit;
+    private final long sendTimeLimitNanos;
+    
+    public record Binding(String roomId, int seat) {}
+    
+    public SessionRegistry(@Value("${guandan.ws.outbound.buffer-limit:64}") int bufferLimit,
+                           @Value("${guandan.ws.outbound.overflow-policy:CONFLATE}") SessionSender.OverflowPolicy overflowPolicy,
+                           @Value("${guandan.ws.outbound.threads:0}") int threads,
+                           @Value("${guandan.ws.outbound.batch-limit:16}") int batchLimit,
+                           @Value("${guandan.ws.outbound.send-time-limit-ms:5000}") long sendTimeLimitMs) {
+        this.bufferLimit = bufferLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.batchLimit = batchLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger counter = new AtomicInteger();
+        this.senderPool = Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r, "ws-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // only from afterConnectionEstablished: a session is never registered again once unregistered
+    public SessionSender register(WebSocketSession session) {
+        return sessions.computeIfAbsent(session.getId(),
+                id -> new SessionSender(session, senderPool, bufferLimit, overflowPolicy, batchLimit, sendTimeLimitNanos));
+    }
+    
+    // null once the session has been unregistered
+    public SessionSender senderOf(WebSocketSession session) {
+        return sessions.get(session.getId());
+    }
+    
+    // Binds a registered session to a seat; false if the session has already closed, in which case
+    // nothing is indexed. A close racing with the bind is caught by the re-check at the end.
+    public boolean bind(WebSocketSession session, String roomId, int seat) {
+        SessionSender sender = sessions.get(session.getId());
+        if (sender == null || !session.isOpen()) return false;
+        Binding binding = new Binding(roomId, seat);
+        Binding previous = sessionToRoom.put(session.getId(), binding);
+        if (previous != null && !previous.roomId().equals(roomId)) {
+            leave(previous.roomId(), sender);
+        }
+        roomSessions.compute(roomId, (id, members) -> {
+            Set<SessionSender> target = members != null ? members : ConcurrentHashMap.<SessionSender>newKeySet();
+            target.add(sender);
+            return target;
+        });
+        if (sessions.get(session.getId()) != sender) {
+            sessionToRoom.remove(session.getId(), binding);
+            leave(roomId, sender);
+            return false;
+        }
+        return true;
+    }
+    
+    public Binding bindingOf(WebSocketSession session) {
+        return sessionToRoom.get(session.getId());
+    }
+    
+    public String roomOf(WebSocketSession session) {
+        Binding binding = sessionToRoom.get(session.getId());
+        return binding == null ? null : binding.roomId();
+    }
+    
+    public Collection<SessionSender> sessionsIn(String roomId) {
+        Set<SessionSender> members = roomSessions.get(roomId);
+        return members == null ? Collections.emptySet() : members;
+    }
+    
+    // Removes the session from every index and returns the room binding it had, if any
+    public Binding unregister(WebSocketSession session) {
+        SessionSender sender = sessions.remove(session.getId());
+        Binding binding = sessionToRoom.remove(session.getId());
+        if (binding != null && sender != null) {
+            leave(binding.roomId(), sender);
+        }
+        return binding;
+    }
+    
+    public int size() {
+        return sessions.size();
+    }
+    
+    // Closes sessions whose socket write is blocked past the send time limit; closing fails the
+    // blocked write, which returns its writer thread to the pool
+    @Scheduled(fixedDelay = 1000)
+    public void closeStuckSessions() {
+        long now = System.nanoTime();
+        for (SessionSender sender : sessions.values()) {
+            if (sender.isStuck(now)) {
+                log.info("Closing session {}: send blocked past the time limit", sender.getSession().getId());
+                sender.close(CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        senderPool.shutdown();
+    }
+    
+    private void leave(String roomId, SessionSender sender) {
+        roomSessions.computeIfPresent(roomId, (id, members) -> {
+            members.remove(sender);
+            return members.isEmpty() ? null : members;
+        });
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.guandan.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+// Outbound queue for one session. Callers never block on the socket: messages are buffered and
+// written by a single drain task on the shared sender pool. A drain turn takes up to batchLimit
+// queued messages, coalesces keyed state messages superseded within the batch, sends the rest and
+// then yields the writer thread to other sessions. A client that falls behind by more than
+// bufferLimit messages is handled by the policy; one whose socket write has been blocked for longer
+// than the send time limit is closed by SessionRegistry's watchdog, which frees the writer.
+@Slf4j
+public class SessionSender implements Runnable {
+    
+    public enum OverflowPolicy {
+        DROP,       // discard the new message
+        CONFLATE,   // keyed messages replace their queued predecessor; disconnect if still full
+        DISCONNECT  // close the session, the client resyncs on reconnect
+    }
+    
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int bufferLimit;
+    private final OverflowPolicy policy;
+    private final boolean binary;
+    private final int batchLimit;
+    private final long sendTimeLimitNanos;
+    private final ArrayDeque<Outbound> queue = new ArrayDeque<>(); // guarded by this
+    private boolean scheduled; // guarded by this
+    private volatile boolean closed;
+    private long dropped;
+    private volatile long sendingSince; // nanoTime the current socket write started, 0 when idle
+    
+    public SessionSender(WebSocketSession session, Executor executor, int bufferLimit, OverflowPolicy policy,
+                         int batchLimit, long sendTimeLimitNanos) {
+        this.session = session;
+        this.executor = executor;
+        this.bufferLimit = bufferLimit;
+        this.policy = policy;
+        this.batchLimit = batchLimit;
+        this.sendTimeLimitNanos = sendTimeLimitNanos;
+        this.binary = BinaryProtocol.SUBPROTOCOL.equals(session.getAcceptedProtocol());
+    }
+    
+    public WebSocketSession getSession() {
+        return session;
+    }
+    
+    // negotiated the compact binary protocol at handshake
+    public boolean isBinary() {
+        return binary;
+    }
+    
+    public boolean isOpen() {
+        return !closed && session.isOpen();
+    }
+    
+    public void send(WebSocketMessage<?> message) {
+        send(message, null);
+    }
+    
+    // conflationKey marks state messages where only the latest one matters, e.g. room info
+    public void send(WebSocketMessage<?> message, String conflationKey) {
+        if (closed) return;
+        boolean schedule = false;
+        boolean overflow = false;
+        synchronized (this) {
+            if (conflationKey != null && policy == OverflowPolicy.CONFLATE) {
+                removeQueued(conflationKey);
+            }
+            if (queue.size() >= bufferLimit) {
+                if (policy == OverflowPolicy.DROP) {
+                    dropped++;
+                    return;
+                }
+                overflow = true;
+            } else {
+                queue.add(new Outbound(message, conflationKey));
+                if (!scheduled) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (overflow) {
+            log.info("Closing slow session {} after outbound buffer overflow", session.getId());
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } else if (schedule) {
+            executor.execute(this);
+        }
+    }
+    
+    public synchronized long getDropped() {
+        return dropped;
+    }
+    
+    // true if a socket write has been blocked for longer than the send time limit
+    public boolean isStuck(long now) {
+        long since = sendingSince;
+        return since != 0 && now - since > sendTimeLimitNanos;
+    }
+    
+    @Override
+    public void run() {
+        List<Outbound> batch;
+        synchronized (this) {
+            if (closed || queue.isEmpty()) {
+                scheduled = false;
+                return;
+            }
+            batch = new ArrayList<>(Math.min(queue.size(), batchLimit));
+            while (batch.size() < batchLimit && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+        }
+        
+        for (Outbound next : coalesce(batch)) {
+            sendingSince = System.nanoTime();
+            try {
+                session.sendMessage(next.message);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Send to session {} failed", session.getId(), e);
+                close(CloseStatus.SERVER_ERROR);
+                synchronized (this) {
+                    scheduled = false;
+                }
+                return;
+            } finally {
+                sendingSince = 0;
+            }
+        }
+        
+        boolean more;
+        synchronized (this) {
+            more = !closed && !queue.isEmpty();
+            if (!more) scheduled = false;
+        }
+        // back of the pool's queue, so a busy session cannot hold a writer thread
+        if (more) executor.execute(this);
+    }
+    
+    public void close(CloseStatus status) {
+        if (closed) return;
+        closed = true;
+        synchronized (this) {
+            queue.clear();
+        }
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("Close of session {} failed", session.getId(), e);
+        }
+    }
+    
+    // the batch without keyed messages that a later message of the same key supersedes
+    private static Collection<Outbound> coalesce(List<Outbound> batch) {
+        Set<String> later = new HashSet<>();
+        ArrayDeque<Outbound> kept = new ArrayDeque<>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Outbound outbound = batch.get(i);
+            if (outbound.conflationKey == null || later.add(outbound.conflationKey)) {
+                kept.addFirst(outbound);
+            }
+        }
+        return kept;
+    }
+    
+    private void removeQueued(String conflationKey) {
+        for (Iterator<Outbound> it = queue.iterator(); it.hasNext(); ) {
+            if (conflationKey.equals(it.next().conflationKey)) {
+                it.remove();
+                return;
+            }
+        }
+    }
+    
+    private record Outbound(WebSocketMessage<?> message, String conflationKey) {}
+}
@@ -12,6 +12,16 @@ public interface GameHistoryMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(GameHistory gameHistory);
     
-    @Select("SELECT * FROM game_history WHERE player0_id = #{userId} OR player1_id = #{userId} OR player2_id = #{userId} OR player3_id = #{userId} ORDER BY created_at DESC")
-    List<GameHistory> findByUserId(Long userId);
+    @Insert({"<script>",
+            "INSERT INTO game_history(room_id, player0_id, player1_id, player2_id, player3_id, winner_team, final_rank, score_change, game_type, created_at) VALUES ",
+            "<foreach collection='games' item='g' separator=','>",
+            "(#{g.roomId}, #{g.player0Id}, #{g.player1Id}, #{g.player2Id}, #{g.player3Id}, #{g.winnerTeam}, #{g.finalRank}, #{g.scoreChange}, #{g.gameType}, #{g.createdAt})",
+            "</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "games.id")
+    int insertBatch(@Param("games") List<GameHistory> games);
+    
+    @Select("SELECT h.* FROM game_participant p JOIN game_history h ON h.id = p.game_id " +
+            "WHERE p.user_id = #{userId} ORDER BY p.created_at DESC, p.game_id DESC LIMIT #{limit}")
+    List<GameHistory> findByUserId(@Param("userId") Long userId, @Param("limit") int limit);
 }
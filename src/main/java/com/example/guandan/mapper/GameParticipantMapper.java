@@ -0,0 +1,30 @@
+package com.example.guandan.mapper;
+
+import com.example.guandan.entity.GameParticipant;
+import org.apache.ibatis.annotations.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface GameParticipantMapper {
+    
+    @Insert({"<script>",
+            "INSERT INTO game_participant(user_id, game_id, created_at, seat, result) VALUES ",
+            "<foreach collection='participants' item='p' separator=','>",
+            "(#{p.userId}, #{p.gameId}, #{p.createdAt}, #{p.seat}, #{p.result})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("participants") List<GameParticipant> participants);
+    
+    // Keyset page of a user's games, newest first: a range scan of the primary key that starts
+    // after the (beforeTime, beforeGameId) cursor, whatever the history size
+    @Select({"<script>",
+            "SELECT user_id, game_id, created_at, seat, result FROM game_participant WHERE user_id = #{userId}",
+            "<if test='beforeTime != null'>",
+            "AND (created_at &lt; #{beforeTime} OR (created_at = #{beforeTime} AND game_id &lt; #{beforeGameId}))",
+            "</if>",
+            "ORDER BY created_at DESC, game_id DESC LIMIT #{limit}",
+            "</script>"})
+    List<GameParticipant> findPage(@Param("userId") Long userId, @Param("beforeTime") LocalDateTime beforeTime,
+                                   @Param("beforeGameId") Long beforeGameId, @Param("limit") int limit);
+}
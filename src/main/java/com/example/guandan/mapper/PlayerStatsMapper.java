@@ -2,6 +2,7 @@ package com.example.guandan.mapper;
 
 import com.example.guandan.entity.PlayerStats;
 import org.apache.ibatis.annotations.*;
+import java.util.List;
 
 @Mapper
 public interface PlayerStatsMapper {
@@ -13,7 +14,19 @@ public interface PlayerStatsMapper {
             "VALUES(#{userId}, #{totalGames}, #{totalWins}, #{totalScore}, #{winRate})")
     int insert(PlayerStats stats);
     
-    @Update("UPDATE player_stats SET total_games = #{totalGames}, total_wins = #{totalWins}, " +
-            "total_score = #{totalScore}, win_rate = #{winRate} WHERE user_id = #{userId}")
-    int update(PlayerStats stats);
+    // Adds per-user deltas (games, wins and score of a batch) in one statement; win_rate is
+    // recomputed by MySQL from the updated totals
+    @Insert({"<script>",
+            "INSERT INTO player_stats(user_id, total_games, total_wins, total_score, win_rate) VALUES ",
+            "<foreach collection='deltas' item='s' separator=','>",
+            "(#{s.userId}, #{s.totalGames}, #{s.totalWins}, #{s.totalScore}, ROUND(100 * #{s.totalWins} / #{s.totalGames}, 2))",
+            "</foreach>",
+            " ON DUPLICATE KEY UPDATE total_games = total_games + VALUES(total_games), total_wins = total_wins + VALUES(total_wins), ",
+            "total_score = total_score + VALUES(total_score), win_rate = ROUND(100 * total_wins / total_games, 2)",
+            "</script>"})
+    int addResults(@Param("deltas") List<PlayerStats> deltas);
+    
+    // Keyset page of scores in user id order, for rebuilding the leaderboard
+    @Select("SELECT user_id, total_score FROM player_stats WHERE user_id > #{after} ORDER BY user_id LIMIT #{limit}")
+    List<PlayerStats> findScoresAfter(@Param("after") Long after, @Param("limit") int limit);
 }
@@ -1,39 +1,117 @@
 package com.example.guandan.model;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
-public class Card {
-    private String color; // Spade, Club, Heart, Diamond, Joker
-    private int number; // 1-14 (1=A, 11=J, 12=Q, 13=K, 14=2), 15=BlackJoker, 16=RedJoker
-    private boolean selected;
-    
-    public Card(String color, int number) {
-        this.color = color;
+// Cards are immutable flyweights: there is one canonical instance per face (54), shared by both
+// copies in the deck and by every hand, so equality is identity. Instances come from of/ofFace,
+// including JSON deserialization.
+@Getter
+@ToString
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class Card {
+    
+    public enum Suit {
+        SPADE("Spade"), CLUB("Club"), HEART("Heart"), DIAMOND("Diamond"), JOKER("Joker");
+        
+        private final String label;
+        
+        Suit(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+        
+        public static Suit of(String label) {
+            for (Suit suit : values()) {
+                if (suit.label.equals(label)) return suit;
+            }
+            return null;
+        }
+    }
+    
+    private static final Card[] FACES = new Card[CardCodec.FACES];
+    private static final int[][] RANKS = new int[17][17]; // [level][number]
+    
+    static {
+        for (int face = 0; face < CardCodec.FACES; face++) {
+            Suit suit = face >= CardCodec.BLACK_JOKER_FACE ? Suit.JOKER : Suit.values()[face / 13];
+            FACES[face] = new Card(suit, CardCodec.faceNumber(face), face);
+        }
+        for (int level = 0; level < RANKS.length; level++) {
+            for (int number = 0; number < RANKS[level].length; number++) {
+                RANKS[level][number] = computeRank(number, level);
+            }
+        }
+    }
+    
+    @JsonIgnore
+    private final Suit suit;
+    private final int number; // 1-14 (1=A, 11=J, 12=Q, 13=K, 14=2), 15=BlackJoker, 16=RedJoker
+    @JsonIgnore
+    private final int face; // CardCodec face, -1 for a card that is not part of the deck
+    
+    private Card(Suit suit, int number, int face) {
+        this.suit = suit;
         this.number = number;
-        this.selected = false;
+        this.face = face;
+    }
+    
+    @JsonCreator
+    public static Card of(@JsonProperty("color") String color, @JsonProperty("number") int number) {
+        int face = CardCodec.face(color, number);
+        // an unknown card is never interned; no hand holds it, so any play containing it is rejected
+        return face >= 0 ? FACES[face] : new Card(Suit.of(color), number, -1);
+    }
+    
+    public static Card ofFace(int face) {
+        return FACES[face];
+    }
+    
+    public String getColor() {
+        return suit != null ? suit.label : null; // Spade, Club, Heart, Diamond, Joker
+    }
+    
+    // The card number that plays as the level card: levels count 2..A, but the deck numbers the 2 as
+    // 14, so level 2 is played by number 14
+    public static int levelNumber(int level) {
+        return level == 2 ? 14 : level;
     }
     
     public boolean isLevelCard(int level) {
-        return number == level;
+        return number == levelNumber(level);
     }
     
     public boolean isRedHeartLevelCard(int level) {
-        return "Heart".equals(color) && number == level;
+        return suit == Suit.HEART && isLevelCard(level);
     }
     
+    @JsonIgnore
     public boolean isJoker() {
         return number >= 15;
     }
     
     public int getRank(int level) {
+        return rankOf(number, level);
+    }
+    
+    public static int rankOf(int number, int level) {
+        if (level >= 0 && level < RANKS.length && number >= 0 && number < RANKS.length) {
+            return RANKS[level][number];
+        }
+        return computeRank(number, level);
+    }
+    
+    private static int computeRank(int number, int level) {
         if (number == 16) return 16; // Red Joker
         if (number == 15) return 15; // Black Joker
-        if (isLevelCard(level)) return 14; // Level card
+        if (number == levelNumber(level)) return 14; // Level card
         if (number == 1) return 13; // A
         if (number == 13) return 12; // K
         if (number == 12) return 11; // Q
@@ -0,0 +1,192 @@
+package com.example.guandan.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Primitive encodings used by the rules engine.
+//
+// counts: per-number histogram packed into a long, one 4-bit nibble per card number (1-16),
+//         nibble (number - 1) holds how many cards of that number are present (max 8).
+// faces:  54 distinct card faces (4 suits x 13 numbers + 2 jokers). A full 108-card hand is
+//         held as two 54-bit masks, one for the first copy of each face and one for the second.
+public final class CardCodec {
+    
+    public static final int FACES = 54;
+    public static final int BLACK_JOKER_FACE = 52;
+    public static final int RED_JOKER_FACE = 53;
+    
+    private static final String[] SUITS = {"Spade", "Club", "Heart", "Diamond"};
+    private static final long NIBBLE_LOW_BITS = 0x1111111111111111L;
+    
+    private CardCodec() {}
+    
+    public static int suitIndex(String color) {
+        for (int i = 0; i < SUITS.length; i++) {
+            if (SUITS[i].equals(color)) return i;
+        }
+        return -1;
+    }
+    
+    public static String suitName(int suit) {
+        return SUITS[suit];
+    }
+    
+    // 1=A is slot 0, 3..14 are slots 1..12; number 2 is not part of the deck (2 is 14)
+    public static int face(String color, int number) {
+        if (number == 15) return BLACK_JOKER_FACE;
+        if (number == 16) return RED_JOKER_FACE;
+        int suit = suitIndex(color);
+        if (suit < 0 || number < 1 || number > 14 || number == 2) return -1;
+        return suit * 13 + (number == 1 ? 0 : number - 2);
+    }
+    
+    public static int face(Card card) {
+        return card.getFace();
+    }
+    
+    public static int faceNumber(int face) {
+        if (face == BLACK_JOKER_FACE) return 15;
+        if (face == RED_JOKER_FACE) return 16;
+        int slot = face % 13;
+        return slot == 0 ? 1 : slot + 2;
+    }
+    
+    public static String faceColor(int face) {
+        return face >= BLACK_JOKER_FACE ? "Joker" : SUITS[face / 13];
+    }
+    
+    // the first cards of hand covering counts, in hand order; counts must be held by the hand
+    public static List<Card> select(List<Card> hand, long counts) {
+        List<Card> selected = new ArrayList<>(total(counts));
+        for (int i = 0, n = hand.size(); i < n && counts != 0; i++) {
+            Card card = hand.get(i);
+            if (count(counts, card.getNumber()) > 0) {
+                selected.add(card);
+                counts = removeCount(counts, card.getNumber());
+            }
+        }
+        return selected;
+    }
+    
+    public static long countsOf(List<Card> cards) {
+        long counts = 0;
+        if (cards == null) return counts;
+        for (int i = 0, n = cards.size(); i < n; i++) {
+            counts = addCount(counts, cards.get(i).getNumber());
+        }
+        return counts;
+    }
+    
+    public static int count(long counts, int number) {
+        return (int) (counts >>> ((number - 1) << 2)) & 0xF;
+    }
+    
+    public static long addCount(long counts, int number) {
+        return counts + (1L << ((number - 1) << 2));
+    }
+    
+    public static long removeCount(long counts, int number) {
+        return counts - (1L << ((number - 1) << 2));
+    }
+    
+    public static int total(long counts) {
+        int total = 0;
+        for (long c = counts; c != 0; c >>>= 4) {
+            total += (int) (c & 0xF);
+        }
+        return total;
+    }
+    
+    // number of distinct card numbers present
+    public static int distinct(long counts) {
+        return Long.bitCount(present(counts));
+    }
+    
+    // the low bit of every non-empty nibble, so two histograms share a number iff their masks intersect
+    public static long present(long counts) {
+        long any = counts | (counts >>> 1) | (counts >>> 2) | (counts >>> 3);
+        return any & NIBBLE_LOW_BITS;
+    }
+    
+    public static int lowestNumber(long counts) {
+        return counts == 0 ? 0 : (Long.numberOfTrailingZeros(counts) >>> 2) + 1;
+    }
+    
+    public static int highestNumber(long counts) {
+        return counts == 0 ? 0 : ((63 - Long.numberOfLeadingZeros(counts)) >>> 2) + 1;
+    }
+    
+    public static boolean containsAll(long have, long need) {
+        for (; need != 0; have >>>= 4, need >>>= 4) {
+            if ((need & 0xF) > (have & 0xF)) return false;
+        }
+        return true;
+    }
+    
+    // true if every present number appears exactly groupSize times and the numbers are consecutive
+    public static boolean isConsecutive(long counts, int groupSize) {
+        int low = lowestNumber(counts);
+        int high = highestNumber(counts);
+        if (low == 0) return false;
+        for (int number = low; number <= high; number++) {
+            if (count(counts, number) != groupSize) return false;
+        }
+        return true;
+    }
+    
+    public static int maxRank(long counts, int level) {
+        int max = 0;
+        for (int number = lowestNumber(counts), high = highestNumber(counts); number <= high && number > 0; number++) {
+            if (count(counts, number) > 0) {
+                max = Math.max(max, Card.rankOf(number, level));
+            }
+        }
+        return max;
+    }
+    
+    // sets the bit for a card in the first free copy mask; masks[0] is the first copy, masks[1] the second
+    public static void addFace(long[] masks, int face) {
+        if (face < 0) return;
+        long bit = 1L << face;
+        if ((masks[0] & bit) == 0) {
+            masks[0] |= bit;
+        } else {
+            masks[1] |= bit;
+        }
+    }
+    
+    public static void removeFace(long[] masks, int face) {
+        if (face < 0) return;
+        long bit = 1L << face;
+        if ((masks[1] & bit) != 0) {
+            masks[1] &= ~bit;
+        } else {
+            masks[0] &= ~bit;
+        }
+    }
+    
+    // true if have holds every card of need; copy masks keep the second copy of a face only
+    // where the first is set, so containment of both masks is containment of the cards
+    public static boolean containsFaces(long[] have, long[] need) {
+        return (need[0] & ~have[0]) == 0 && (need[1] & ~have[1]) == 0;
+    }
+    
+    public static long[] masksOf(List<Card> cards) {
+        long[] masks = new long[2];
+        for (Card card : cards) {
+            addFace(masks, face(card));
+        }
+        return masks;
+    }
+    
+    // the cards of two copy masks, in face order
+    public static List<Card> cardsOf(long first, long second) {
+        List<Card> cards = new ArrayList<>(Long.bitCount(first) + Long.bitCount(second));
+        for (long mask : new long[]{first, second}) {
+            for (; mask != 0; mask &= mask - 1) {
+                cards.add(Card.ofFace(Long.numberOfTrailingZeros(mask)));
+            }
+        }
+        return cards;
+    }
+}
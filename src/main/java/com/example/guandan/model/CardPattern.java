@@ -1,42 +1,77 @@
 package com.example.guandan.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import java.util.*;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class CardPattern {
+    private static final int[] RUN_MIN_LENGTH = {0, 5, 3, 2}; // groups per run, indexed by group size
+    
     private PatternType type;
     private int rank;
     private int count;
     private List<Card> cards;
+    @JsonIgnore
+    private long counts; // CardCodec per-number histogram of cards
+    
+    public CardPattern(PatternType type, int rank, int count, List<Card> cards) {
+        this(type, rank, count, cards, CardCodec.countsOf(cards));
+    }
+    
+    public void setCards(List<Card> cards) {
+        this.cards = cards;
+        this.counts = CardCodec.countsOf(cards);
+    }
+    
+    // the fewest consecutive groups of groupSize cards that make a straight (1), pair straight (2)
+    // or triple straight (3); shared by the rules and the move generator
+    public static int runMinLength(int groupSize) {
+        return RUN_MIN_LENGTH[groupSize];
+    }
     
     public enum PatternType {
-        SINGLE, PAIR, TRIPLE, STRAIGHT, TRIPLE_STRAIGHT, PAIR_STRAIGHT, BOMB, KING_BOMB, PASS
+        SINGLE, PAIR, TRIPLE, STRAIGHT, TRIPLE_STRAIGHT, PAIR_STRAIGHT, BOMB, KING_BOMB, FULL_HOUSE, STRAIGHT_FLUSH, PASS
+    }
+    
+    // Bomb tiers, weakest first: 4- and 5-card bombs, straight flush, 6- to 10-card bombs, king bomb.
+    // Tier 0 is not a bomb. Indexed by bomb size.
+    private static final int[] BOMB_TIERS = {0, 0, 0, 0, 1, 2, 4, 5, 6, 7, 8};
+    private static final int STRAIGHT_FLUSH_TIER = 3;
+    private static final int KING_BOMB_TIER = 9;
+    
+    public int bombTier() {
+        switch (type) {
+            case BOMB:
+                return BOMB_TIERS[Math.min(count, BOMB_TIERS.length - 1)];
+            case STRAIGHT_FLUSH:
+                return STRAIGHT_FLUSH_TIER;
+            case KING_BOMB:
+                return KING_BOMB_TIER;
+            default:
+                return 0;
+        }
+    }
+    
+    // total order over bombs (tier, then rank); for other patterns just the rank, which is only
+    // comparable between plays of the same type and size
+    public int strength() {
+        return bombTier() << 5 | rank;
     }
     
     public boolean canBeat(CardPattern other, int level) {
         if (other.type == PatternType.PASS) return true;
         if (this.type == PatternType.PASS) return false;
         
-        if (other.type == PatternType.KING_BOMB) {
-            return this.type == PatternType.KING_BOMB && this.rank > other.rank;
+        // a bomb beats any non-bomb, and bombs compare by strength
+        if (this.bombTier() != 0 || other.bombTier() != 0) {
+            return this.strength() > other.strength();
         }
         
-        if (this.type == PatternType.KING_BOMB) return true;
-        
-        if (other.type == PatternType.BOMB) {
-            if (this.type != PatternType.BOMB) return false;
-            if (this.count != other.count) return this.count > other.count;
-            return this.rank > other.rank;
-        }
-        
-        if (this.type == PatternType.BOMB) return true;
-        
-        if (this.type != other.type) return false;
-        if (this.count != other.count) return false;
-        
-        return this.rank > other.rank;
+        return this.type == other.type && this.count == other.count && this.rank > other.rank;
     }
 }
@@ -0,0 +1,83 @@
+package com.example.guandan.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Append-only record of one game: the deal seed plus one pair of face masks per action (first and
+// second copy, both zero for a pass). The seat of an action is implied by the turn order, so
+// GameService.replay rebuilds the exact game from this alone. encode() packs it as varints, which
+// is a few hundred bytes for a whole game.
+@Data
+@NoArgsConstructor
+public class GameLog {
+    private long seed;
+    private int level;
+    private int size; // actions recorded
+    private long[] masks = new long[64]; // 2 per action
+    
+    public GameLog(long seed, int level) {
+        this.seed = seed;
+        this.level = level;
+    }
+    
+    public void append(List<Card> cards) {
+        if (2 * size + 2 > masks.length) {
+            masks = Arrays.copyOf(masks, masks.length * 2);
+        }
+        long[] play = CardCodec.masksOf(cards);
+        masks[2 * size] = play[0];
+        masks[2 * size + 1] = play[1];
+        size++;
+    }
+    
+    public List<Card> cardsAt(int action) {
+        return CardCodec.cardsOf(masks[2 * action], masks[2 * action + 1]);
+    }
+    
+    public void setMasks(long[] masks) {
+        this.masks = masks != null && masks.length > 0 ? masks : new long[64];
+    }
+    
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + size * 8);
+        writeVarint(out, seed);
+        writeVarint(out, level);
+        writeVarint(out, size);
+        for (int i = 0; i < 2 * size; i++) {
+            writeVarint(out, masks[i]);
+        }
+        return out.toByteArray();
+    }
+    
+    public static GameLog decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        GameLog log = new GameLog(readVarint(in), (int) readVarint(in));
+        int size = (int) readVarint(in);
+        log.masks = new long[Math.max(2 * size, 2)];
+        for (int i = 0; i < 2 * size; i++) {
+            log.masks[i] = readVarint(in);
+        }
+        log.size = size;
+        return log;
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.guandan.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import java.util.*;
 
@@ -15,12 +16,18 @@ public class GameRoom {
     private boolean paused;
     private CardPattern lastPattern;
     private int lastPlayerId;
+    private int passCount; // passes since lastPattern was played
     private List<Integer> finishedPlayers = new ArrayList<>();
     private int[] ranks = new int[4];
     private Map<Integer, List<Card>> currentRoundCards = new HashMap<>();
     private TributeState tributeState;
     private int firstPlayer;
     private Long hostId;
+    private long version; // bumped by RoomService.saveRoom on every change
+    private long seq; // game-state sequence, one step per RoomEvent
+    private long ctlEpoch; // RoomGuard epoch of the last cross-node action this copy reflects
+    private List<RoomEvent> events = new ArrayList<>(); // most recent game events, oldest first
+    private GameLog log; // seed and moves of the current game, enough to replay it
     
     @Data
     public static class Player {
@@ -31,6 +38,15 @@ public class GameRoom {
         private boolean ready;
         private boolean online;
         private int score;
+        private boolean bot; // server-side player filling a SINGLE room
+        // primitive views of hand kept in sync by setHand/removeCards, rebuilt on deserialization
+        @JsonIgnore
+        private long handCounts;
+        @JsonIgnore
+        private long[] handMasks = new long[2];
+        // legal plays of the hand, generated on demand by MoveGenerator and pruned there as cards leave
+        @JsonIgnore
+        private HandMoves moves;
         
         public Player() {}
         
@@ -42,6 +58,40 @@ public class GameRoom {
             this.online = true;
             this.score = 0;
         }
+        
+        public void setHand(List<Card> hand) {
+            this.hand = new ArrayList<>(hand);
+            this.handCounts = 0;
+            this.handMasks = new long[2];
+            this.moves = null;
+            for (Card card : this.hand) {
+                handCounts = CardCodec.addCount(handCounts, card.getNumber());
+                CardCodec.addFace(handMasks, CardCodec.face(card));
+            }
+        }
+        
+        // true if the hand holds these exact cards, suit and copies included
+        public boolean holds(List<Card> cards) {
+            long[] need = new long[2];
+            for (Card card : cards) {
+                int face = CardCodec.face(card);
+                if (face < 0 || (need[1] & (1L << face)) != 0) return false;
+                CardCodec.addFace(need, face);
+            }
+            return CardCodec.containsFaces(handMasks, need);
+        }
+        
+        // Removes exactly one hand card per played card, unlike List.removeAll which drops both
+        // copies; false, with the hand untouched, if the hand does not hold every card
+        public boolean removeCards(List<Card> cards) {
+            if (!holds(cards)) return false;
+            for (Card card : cards) {
+                hand.remove(card);
+                handCounts = CardCodec.removeCount(handCounts, card.getNumber());
+                CardCodec.removeFace(handMasks, CardCodec.face(card));
+            }
+            return true;
+        }
     }
     
     @Data
@@ -0,0 +1,26 @@
+package com.example.guandan.model;
+
+import lombok.Getter;
+import java.util.*;
+
+// Legal plays of one hand at one level. A hand only ever shrinks during a game, so when cards
+// leave it MoveGenerator prunes these moves instead of regenerating them all.
+@Getter
+public class HandMoves {
+    private final int level;
+    private long counts; // hand histogram the moves are valid for
+    private final List<CardPattern> patterns;
+    
+    public HandMoves(int level, long counts, List<CardPattern> patterns) {
+        this.level = level;
+        this.counts = counts;
+        this.patterns = patterns;
+    }
+    
+    // the moves still valid for the hand whose histogram is counts
+    public void retain(long counts, List<CardPattern> patterns) {
+        this.counts = counts;
+        this.patterns.clear();
+        this.patterns.addAll(patterns);
+    }
+}
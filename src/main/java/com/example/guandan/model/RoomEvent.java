@@ -0,0 +1,23 @@
+package com.example.guandan.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.*;
+
+// One game-state change, numbered by GameRoom.seq; the recent ones are kept on the room so
+// clients can catch up with a delta instead of a full snapshot
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomEvent {
+    private long seq;
+    private Type type;
+    private int seat;
+    private List<Card> cards;
+    private int nextPlayer;
+    
+    public enum Type {
+        DEAL, PLAY, PASS, FINISH
+    }
+}
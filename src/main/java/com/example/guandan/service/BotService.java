@@ -0,0 +1,301 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server-side players for the empty seats of SINGLE rooms. A bot move is searched on a dedicated,
+// bounded pool of low-priority threads, so bot thinking never runs on room actors or socket
+// writers, and the chosen move is applied back on the room's actor. The search is flat Monte Carlo
+// over determinized hands: for every playout the cards the bot cannot see are redealt at random to
+// the other seats, and each candidate move is scored by how often its team wins greedy playouts
+// within the move budget. When the pool is saturated the bot plays the greedy move directly.
+@Slf4j
+@Service
+public class BotService {
+    
+    private static final int MAX_PLAYOUT_STEPS = 400;
+    private static final double EXPLORATION = 1.4;
+    
+    private final GameService gameService;
+    private final MoveGenerator moveGenerator;
+    private final RoomService roomService;
+    private final RoomExecutor roomExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolExecutor pool;
+    private final long moveBudgetNanos;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    
+    private final LongAdder searchedMoves = new LongAdder();
+    private final LongAdder fallbackMoves = new LongAdder();
+    private final LongAdder staleMoves = new LongAdder();
+    private final LongAdder playouts = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+    private final LongAccumulator maxCpuNanos = new LongAccumulator(Math::max, 0);
+    
+    // published on the room's actor after a bot move has been applied and saved
+    public record BotMove(GameRoom room, int seat, List<Card> cards, int[] scoresBefore) {}
+    
+    public BotService(GameService gameService, MoveGenerator moveGenerator, RoomService roomService,
+                      RoomExecutor roomExecutor, ApplicationEventPublisher eventPublisher,
+                      @Value("${guandan.bot.threads:0}") int threads,
+                      @Value("${guandan.bot.queue-capacity:1024}") int queueCapacity,
+                      @Value("${guandan.bot.move-budget-ms:100}") long moveBudgetMs) {
+        this.gameService = gameService;
+        this.moveGenerator = moveGenerator;
+        this.roomService = roomService;
+        this.roomExecutor = roomExecutor;
+        this.eventPublisher = eventPublisher;
+        this.moveBudgetNanos = TimeUnit.MILLISECONDS.toNanos(moveBudgetMs);
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "bot-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+    
+    // Seats a bot in every empty seat; runs on the room's actor
+    public void fillSeats(GameRoom room) {
+        for (int i = 0; i < 4; i++) {
+            if (room.getPlayers()[i] == null) {
+                GameRoom.Player bot = new GameRoom.Player(null, "Bot " + (i + 1), i);
+                bot.setBot(true);
+                if (!roomService.seat(room, i, bot)) return;
+            }
+        }
+    }
+    
+    // Starts the search if a bot is to move; call on the room's actor after every state change
+    public void onTurn(GameRoom room) {
+        if (!room.isStarted() || room.isFinished()) return;
+        int seat = room.getCurrentPlayer();
+        GameRoom.Player player = room.getPlayers()[seat];
+        if (player == null || !player.isBot()) return;
+        
+        Search search = new Search(room, seat);
+        try {
+            pool.execute(() -> {
+                List<Card> cards;
+                try {
+                    cards = search.run();
+                } catch (RuntimeException e) {
+                    log.warn("Bot search failed in room {}, playing the greedy move", search.roomId, e);
+                    cards = search.greedy;
+                }
+                List<Card> chosen = cards;
+                roomExecutor.execute(search.roomId, () -> apply(search.roomId, search.seq, seat, chosen));
+            });
+        } catch (RejectedExecutionException e) {
+            fallbackMoves.increment();
+            roomExecutor.execute(search.roomId, () -> apply(search.roomId, search.seq, seat, search.greedy));
+        }
+    }
+    
+    public Map<String, Object> stats() {
+        long moves = searchedMoves.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("searched_moves", moves);
+        stats.put("fallback_moves", fallbackMoves.sum());
+        stats.put("stale_moves", staleMoves.sum());
+        stats.put("playouts", playouts.sum());
+        stats.put("move_budget_ms", TimeUnit.NANOSECONDS.toMillis(moveBudgetNanos));
+        stats.put("avg_cpu_ms", moves == 0 ? 0.0 : cpuNanos.sum() / 1e6 / moves);
+        stats.put("max_cpu_ms", maxCpuNanos.get() / 1e6);
+        stats.put("over_budget_moves", overBudget.sum());
+        stats.put("pool_threads", pool.getPoolSize());
+        stats.put("pool_active", pool.getActiveCount());
+        stats.put("pool_queued", pool.getQueue().size());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    private void apply(String roomId, long seq, int seat, List<Card> cards) {
+        GameRoom room = roomService.getRoom(roomId);
+        // a human may have acted (or the room restarted) while the bot was thinking
+        if (room == null || room.getSeq() != seq || room.getCurrentPlayer() != seat || room.isFinished()) {
+            staleMoves.increment();
+            return;
+        }
+        
+        int[] scores = new int[4];
+        for (int i = 0; i < 4; i++) {
+            scores[i] = room.getPlayers()[i].getScore();
+        }
+        if (!gameService.playCards(room, seat, cards)) {
+            log.warn("Bot move rejected in room {}, falling back to the greedy move", roomId);
+            cards = moveGenerator.greedyMove(room, seat);
+            if (!gameService.playCards(room, seat, cards)) {
+                cards = forcedMove(room, seat);
+                if (cards == null) {
+                    log.error("Bot in room {} seat {} has no accepted move, the game cannot go on", roomId, seat);
+                    return;
+                }
+            }
+        }
+        if (!roomService.advance(room, seat, seq)) return;
+        eventPublisher.publishEvent(new BotMove(room, seat, cards, scores));
+        onTurn(room);
+    }
+    
+    // Last resort when the greedy move is refused too: a pass if the round allows one, otherwise the
+    // first generated move the rules accept, so the bot's turn never stalls the room; null if none is
+    private List<Card> forcedMove(GameRoom room, int seat) {
+        log.error("Greedy bot move rejected in room {} seat {}, forcing a pass or the first legal move", room.getRoomId(), seat);
+        List<Card> pass = new ArrayList<>();
+        if (gameService.playCards(room, seat, pass)) return pass;
+        for (CardPattern move : moveGenerator.legalMoves(room, seat)) {
+            List<Card> cards = new ArrayList<>(move.getCards());
+            if (gameService.playCards(room, seat, cards)) return cards;
+        }
+        return null;
+    }
+    
+    // Everything the search needs, copied on the room's actor so the bot pool never touches the room
+    private final class Search {
+        private final String roomId;
+        private final long seq;
+        private final int seat;
+        private final int level;
+        private final List<Card> hand;
+        private final int[] handSizes = new int[4];
+        private final List<Card> unseen = new ArrayList<>();
+        private final CardPattern lastPattern;
+        private final int lastPlayerId;
+        private final int passCount;
+        private final List<Integer> finishedPlayers;
+        private final List<List<Card>> candidates = new ArrayList<>();
+        private final List<Card> greedy;
+        
+        private Search(GameRoom room, int seat) {
+            this.roomId = room.getRoomId();
+            this.seq = room.getSeq();
+            this.seat = seat;
+            this.level = room.getLevel();
+            this.hand = new ArrayList<>(room.getPlayers()[seat].getHand());
+            for (int i = 0; i < 4; i++) {
+                List<Card> other = room.getPlayers()[i].getHand();
+                handSizes[i] = other.size();
+                // only the union of the other hands is known to the bot, never who holds what
+                if (i != seat) unseen.addAll(other);
+            }
+            this.lastPattern = room.getLastPattern();
+            this.lastPlayerId = room.getLastPlayerId();
+            this.passCount = room.getPassCount();
+            this.finishedPlayers = new ArrayList<>(room.getFinishedPlayers());
+            for (CardPattern move : moveGenerator.legalMoves(room, seat)) {
+                candidates.add(new ArrayList<>(move.getCards()));
+            }
+            if (lastPattern != null) candidates.add(new ArrayList<>());
+            this.greedy = moveGenerator.greedyMove(room, seat);
+        }
+        
+        private List<Card> run() {
+            if (candidates.size() <= 1) {
+                return candidates.isEmpty() ? greedy : candidates.get(0);
+            }
+            
+            boolean cpuTimed = threadBean.isCurrentThreadCpuTimeSupported();
+            long cpuStart = cpuTimed ? threadBean.getCurrentThreadCpuTime() : 0;
+            long deadline = System.nanoTime() + moveBudgetNanos;
+            Random random = ThreadLocalRandom.current();
+            
+            int n = candidates.size();
+            int[] visits = new int[n];
+            double[] wins = new double[n];
+            int total = 0;
+            while (System.nanoTime() < deadline) {
+                int pick = total < n ? total : select(visits, wins, total);
+                wins[pick] += playout(candidates.get(pick), random);
+                visits[pick]++;
+                total++;
+            }
+            
+            playouts.add(total);
+            searchedMoves.increment();
+            if (cpuTimed) {
+                long used = threadBean.getCurrentThreadCpuTime() - cpuStart;
+                cpuNanos.add(used);
+                maxCpuNanos.accumulate(used);
+                if (used > moveBudgetNanos) overBudget.increment();
+            }
+            
+            int best = 0;
+            for (int i = 1; i < n; i++) {
+                if (visits[i] > visits[best]) best = i;
+            }
+            return candidates.get(best);
+        }
+        
+        // UCB1 over the root moves
+        private int select(int[] visits, double[] wins, int total) {
+            double logTotal = Math.log(total);
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < visits.length; i++) {
+                double score = wins[i] / visits[i] + EXPLORATION * Math.sqrt(logTotal / visits[i]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            return best;
+        }
+        
+        // 1 if the bot's team wins the game after this move and greedy play by everyone, 0.5 if cut off
+        private double playout(List<Card> move, Random random) {
+            GameRoom sim = determinize(random);
+            if (!gameService.playCards(sim, seat, move)) return 0;
+            for (int step = 0; !sim.isFinished() && step < MAX_PLAYOUT_STEPS; step++) {
+                int next = sim.getCurrentPlayer();
+                if (!gameService.playCards(sim, next, moveGenerator.greedyMove(sim, next))) return 0.5;
+            }
+            if (!sim.isFinished()) return 0.5;
+            return sim.getFinishedPlayers().get(0) % 2 == seat % 2 ? 1 : 0;
+        }
+        
+        private GameRoom determinize(Random random) {
+            List<Card> deck = new ArrayList<>(unseen);
+            Collections.shuffle(deck, random);
+            
+            GameRoom sim = new GameRoom();
+            sim.setRoomId(roomId);
+            sim.setLevel(level);
+            sim.setStarted(true);
+            sim.setCurrentPlayer(seat);
+            sim.setLastPattern(lastPattern);
+            sim.setLastPlayerId(lastPlayerId);
+            sim.setPassCount(passCount);
+            sim.setFinishedPlayers(new ArrayList<>(finishedPlayers));
+            int dealt = 0;
+            for (int i = 0; i < 4; i++) {
+                GameRoom.Player player = new GameRoom.Player(null, null, i);
+                if (i == seat) {
+                    player.setHand(hand);
+                } else {
+                    player.setHand(deck.subList(dealt, dealt + handSizes[i]));
+                    dealt += handSizes[i];
+                }
+                sim.getPlayers()[i] = player;
+            }
+            return sim;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.guandan.service;
+
+import com.example.guandan.entity.GameHistory;
+import com.example.guandan.entity.GameParticipant;
+import com.example.guandan.entity.PlayerStats;
+import com.example.guandan.mapper.GameHistoryMapper;
+import com.example.guandan.mapper.GameParticipantMapper;
+import com.example.guandan.mapper.PlayerStatsMapper;
+import com.example.guandan.model.GameRoom;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Write-behind persistence of finished games. submit only queues the result, so finishing a game
+// never waits on MySQL; one writer thread drains the bounded queue in batches (by size or after
+// flush-interval-ms) and writes each batch in one transaction: multi-row INSERTs into game_history
+// and game_participant, and one incremental upsert of player_stats for every player in the batch.
+// Committed batches are then added to the leaderboards.
+// Batches that cannot be written, and results that do not fit the queue, are appended to a local
+// spill file that is replayed once MySQL is back.
+@Slf4j
+@Service
+public class GameHistoryWriter {
+    
+    static final long BOT_ID = 0; // game_history player id of a bot seat
+    
+    private final GameHistoryMapper gameHistoryMapper;
+    private final GameParticipantMapper gameParticipantMapper;
+    private final PlayerStatsMapper playerStatsMapper;
+    private final UserService userService;
+    private final LeaderboardService leaderboardService;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<GameHistory> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Path spillFile;
+    private final Object spillLock = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
+    
+    public GameHistoryWriter(GameHistoryMapper gameHistoryMapper, GameParticipantMapper gameParticipantMapper,
+                             PlayerStatsMapper playerStatsMapper, UserService userService,
+                             LeaderboardService leaderboardService,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${guandan.history.queue-capacity:10000}") int queueCapacity,
+                             @Value("${guandan.history.batch-size:200}") int batchSize,
+                             @Value("${guandan.history.flush-interval-ms:1000}") long flushIntervalMs,
+                             @Value("${guandan.history.spill-file:game-history.spill}") String spillFile) {
+        this.gameHistoryMapper = gameHistoryMapper;
+        this.gameParticipantMapper = gameParticipantMapper;
+        this.playerStatsMapper = playerStatsMapper;
+        this.userService = userService;
+        this.leaderboardService = leaderboardService;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.spillFile = Path.of(spillFile);
+        this.writer = new Thread(this::drain, "history-writer");
+        this.writer.setDaemon(true);
+    }
+    
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+    
+    // Queues the result of a room whose game just finished; runs on the room's actor
+    public void submit(GameRoom room) {
+        GameHistory game = toHistory(room);
+        if (!queue.offer(game)) {
+            spill(List.of(game));
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        List<GameHistory> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) spill(left);
+    }
+    
+    private void drain() {
+        long lastSpillRetry = System.nanoTime();
+        while (running) {
+            List<GameHistory> batch = new ArrayList<>(batchSize);
+            try {
+                GameHistory first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long wait = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || wait <= 0) break;
+                        GameHistory next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutting down; whatever was taken is still written or spilled below
+            }
+            
+            boolean failed = !batch.isEmpty() && !write(batch);
+            if (failed) spill(batch);
+            // on a timer, busy or idle: a server that always has games to write must still catch up
+            if (!failed && running && System.nanoTime() - lastSpillRetry > 10 * flushIntervalNanos) {
+                lastSpillRetry = System.nanoTime();
+                replaySpill();
+            }
+        }
+    }
+    
+    private boolean write(List<GameHistory> batch) {
+        List<PlayerStats> deltas = statsDeltas(batch);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                gameHistoryMapper.insertBatch(batch);
+                List<GameParticipant> participants = participants(batch);
+                if (!participants.isEmpty()) gameParticipantMapper.insertBatch(participants);
+                if (!deltas.isEmpty()) playerStatsMapper.addResults(deltas);
+            });
+            userService.evictStats(deltas.stream().map(PlayerStats::getUserId).toList());
+            leaderboardService.recordGames(batch);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} finished games, spilling them to {}", batch.size(), spillFile, e);
+            return false;
+        }
+    }
+    
+    // one row per real player of each game; the game ids were filled in by insertBatch
+    private static List<GameParticipant> participants(List<GameHistory> batch) {
+        List<GameParticipant> participants = new ArrayList<>(batch.size() * 4);
+        for (GameHistory game : batch) {
+            Long[] players = {game.getPlayer0Id(), game.getPlayer1Id(), game.getPlayer2Id(), game.getPlayer3Id()};
+            for (int seat = 0; seat < 4; seat++) {
+                if (players[seat] == null || players[seat] == BOT_ID) continue;
+                GameParticipant participant = new GameParticipant();
+                participant.setUserId(players[seat]);
+                participant.setGameId(game.getId());
+                participant.setCreatedAt(game.getCreatedAt());
+                participant.setSeat(seat);
+                participant.setResult(seat % 2 == game.getWinnerTeam() % 2 ? game.getScoreChange() : -game.getScoreChange());
+                participants.add(participant);
+            }
+        }
+        return participants;
+    }
+    
+    // one row per real player of the batch, in user id order so that concurrent upserts lock rows
+    // in the same order
+    private static List<PlayerStats> statsDeltas(List<GameHistory> batch) {
+        Map<Long, PlayerStats> deltas = new TreeMap<>();
+        for (GameHistory game : batch) {
+            Long[] players = {game.getPlayer0Id(), game.getPlayer1Id(), game.getPlayer2Id(), game.getPlayer3Id()};
+            for (int seat = 0; seat < 4; seat++) {
+                if (players[seat] == null || players[seat] == BOT_ID) continue;
+                boolean won = seat % 2 == game.getWinnerTeam() % 2;
+                PlayerStats delta = deltas.computeIfAbsent(players[seat], id -> {
+                    PlayerStats stats = new PlayerStats();
+                    stats.setUserId(id);
+                    stats.setTotalGames(0);
+                    stats.setTotalWins(0);
+                    stats.setTotalScore(0);
+                    return stats;
+                });
+                delta.setTotalGames(delta.getTotalGames() + 1);
+                if (won) delta.setTotalWins(delta.getTotalWins() + 1);
+                delta.setTotalScore(delta.getTotalScore() + (won ? game.getScoreChange() : -game.getScoreChange()));
+            }
+        }
+        return new ArrayList<>(deltas.values());
+    }
+    
+    private static GameHistory toHistory(GameRoom room) {
+        List<Integer> order = room.getFinishedPlayers();
+        GameHistory game = new GameHistory();
+        game.setRoomId(room.getRoomId());
+        game.setPlayer0Id(playerId(room, 0));
+        game.setPlayer1Id(playerId(room, 1));
+        game.setPlayer2Id(playerId(room, 2));
+        game.setPlayer3Id(playerId(room, 3));
+        game.setWinnerTeam(order.get(0));
+        game.setFinalRank(order.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        // the winners moved up by as many levels as they scored
+        game.setScoreChange(room.getLog() != null ? room.getLevel() - room.getLog().getLevel() : 0);
+        game.setGameType(room.getGameType());
+        game.setCreatedAt(LocalDateTime.now());
+        return game;
+    }
+    
+    private static Long playerId(GameRoom room, int seat) {
+        Long userId = room.getPlayers()[seat].getUserId();
+        return userId != null ? userId : BOT_ID;
+    }
+    
+    private void spill(List<GameHistory> games) {
+        synchronized (spillLock) {
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (GameHistory game : games) {
+                    out.write(String.join("\t", game.getRoomId(), game.getGameType(),
+                            String.valueOf(game.getPlayer0Id()), String.valueOf(game.getPlayer1Id()),
+                            String.valueOf(game.getPlayer2Id()), String.valueOf(game.getPlayer3Id()),
+                            String.valueOf(game.getWinnerTeam()), game.getFinalRank(),
+                            String.valueOf(game.getScoreChange()), game.getCreatedAt().toString()));
+                    out.newLine();
+                }
+            } catch (IOException e) {
+                log.error("Lost {} finished games: cannot write spill file {}", games.size(), spillFile, e);
+            }
+        }
+    }
+    
+    // Moves the spill file aside and writes it back in batches; what still fails is spilled again
+    private void replaySpill() {
+        Path replaying = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        List<String> lines;
+        synchronized (spillLock) {
+            if (!Files.exists(spillFile)) return;
+            try {
+                Files.move(spillFile, replaying, StandardCopyOption.REPLACE_EXISTING);
+                lines = Files.readAllLines(replaying, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                log.warn("Cannot read spill file {}", spillFile, e);
+                return;
+            }
+        }
+        
+        List<GameHistory> games = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (!line.isBlank()) games.add(parse(line));
+        }
+        int written = 0;
+        while (written < games.size()) {
+            List<GameHistory> batch = games.subList(written, Math.min(written + batchSize, games.size()));
+            if (!write(batch)) {
+                spill(games.subList(written, games.size()));
+                break;
+            }
+            written += batch.size();
+        }
+        try {
+            Files.deleteIfExists(replaying);
+        } catch (IOException e) {
+            log.warn("Cannot delete replayed spill file {}", replaying, e);
+        }
+        if (written > 0) log.info("Replayed {} spilled finished games", written);
+    }
+    
+    private static GameHistory parse(String line) {
+        String[] fields = line.split("\t");
+        GameHistory game = new GameHistory();
+        game.setRoomId(fields[0]);
+        game.setGameType(fields[1]);
+        game.setPlayer0Id(Long.valueOf(fields[2]));
+        game.setPlayer1Id(Long.valueOf(fields[3]));
+        game.setPlayer2Id(Long.valueOf(fields[4]));
+        game.setPlayer3Id(Long.valueOf(fields[5]));
+        game.setWinnerTeam(Integer.valueOf(fields[6]));
+        game.setFinalRank(fields[7]);
+        game.setScoreChange(Integer.valueOf(fields[8]));
+        game.setCreatedAt(LocalDateTime.parse(fields[9]));
+        return game;
+    }
+}
@@ -3,14 +3,31 @@ package com.example.guandan.service;
 import com.example.guandan.model.*;
 import org.springframework.stereotype.Service;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class GameService {
     
+    public static final int MAX_EVENTS = 64;
+    private static final int MAX_GROUP = 10; // eight natural copies plus both wildcards
+    // pattern of a play made of `distinct` consecutive numbers with `group` cards each, [group][distinct]
+    private static final CardPattern.PatternType[][] SHAPES = buildShapes();
+    
+    private static final List<Card> DECK = buildDeck();
+    
     public void initGame(GameRoom room) {
+        initGame(room, ThreadLocalRandom.current().nextLong());
+    }
+    
+    // Everything random about a game (first player and deal) comes from its seed, so the seed and
+    // the GameLog of the moves reproduce it exactly
+    public void initGame(GameRoom room, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        room.setFirstPlayer(random.nextInt(4));
         List<Card> deck = createDeck();
-        Collections.shuffle(deck);
+        for (int i = deck.size() - 1; i > 0; i--) {
+            Collections.swap(deck, i, random.nextInt(i + 1));
+        }
         
         for (int i = 0; i < 4; i++) {
             room.getPlayers()[i].setHand(deck.subList(i * 27, (i + 1) * 27));
@@ -20,135 +37,354 @@ public class GameService {
         room.setStarted(true);
         room.setFinished(false);
         room.setLastPattern(null);
+        room.setPassCount(0);
         room.setFinishedPlayers(new ArrayList<>());
         room.getCurrentRoundCards().clear();
+        room.setLog(new GameLog(seed, room.getLevel()));
+        appendEvent(room, RoomEvent.Type.DEAL, room.getFirstPlayer(), null);
     }
     
+    // Rebuilds a game on a room with seated players from its log; throws if the log does not
+    // describe a legal game under the current rules
+    public void replay(GameRoom room, GameLog log) {
+        room.setLevel(log.getLevel());
+        initGame(room, log.getSeed());
+        for (int i = 0; i < log.getSize(); i++) {
+            if (!playCards(room, room.getCurrentPlayer(), log.cardsAt(i))) {
+                throw new IllegalStateException("Replay of room " + room.getRoomId() + " diverged at action " + i);
+            }
+        }
+    }
+    
+    // a shuffleable copy of the shared deck; the cards themselves are the canonical instances
     private List<Card> createDeck() {
-        List<Card> deck = new ArrayList<>();
-        String[] colors = {"Spade", "Club", "Heart", "Diamond"};
-        
+        return new ArrayList<>(DECK);
+    }
+    
+    // 108 cards: two copies of A, 3..K, 2 (14) in each suit plus both jokers
+    private static List<Card> buildDeck() {
+        List<Card> deck = new ArrayList<>(2 * CardCodec.FACES);
         for (int copy = 0; copy < 2; copy++) {
-            for (String color : colors) {
-                for (int num = 1; num <= 13; num++) {
-                    deck.add(new Card(color, num));
-                }
-                deck.add(new Card(color, 14)); // 2
+            for (int face = 0; face < CardCodec.FACES; face++) {
+                deck.add(Card.ofFace(face));
             }
-            deck.add(new Card("Joker", 15)); // Black Joker
-            deck.add(new Card("Joker", 16)); // Red Joker
         }
-        
-        return deck;
+        return Collections.unmodifiableList(deck);
     }
     
     public CardPattern analyzePattern(List<Card> cards, int level) {
+        return analyzePattern(cards, level, null);
+    }
+    
+    // With red-heart level cards (wildcards) a play can have several readings; the strongest one is
+    // chosen, or when a target is given, the strongest one that beats it. The pattern keeps the
+    // histogram of the actual cards; playCards checks the exact cards against the hand.
+    public CardPattern analyzePattern(List<Card> cards, int level, CardPattern target) {
         if (cards == null || cards.isEmpty()) {
             return new CardPattern(CardPattern.PatternType.PASS, 0, 0, cards);
         }
         
+        long counts = CardCodec.countsOf(cards);
         int size = cards.size();
-        
-        // King Bomb
-        if (size == 4 && cards.stream().allMatch(c -> c.getNumber() >= 15)) {
-            return new CardPattern(CardPattern.PatternType.KING_BOMB, 16, 4, cards);
+        int wild = 0;
+        for (int i = 0; i < size; i++) {
+            if (cards.get(i).isRedHeartLevelCard(level)) wild++;
         }
         
-        // Bomb
-        Map<Integer, Long> counts = cards.stream()
-            .collect(Collectors.groupingBy(Card::getNumber, Collectors.counting()));
-        
-        if (counts.size() == 1 && size >= 4) {
-            int num = cards.get(0).getNumber();
-            return new CardPattern(CardPattern.PatternType.BOMB, cards.get(0).getRank(level), size, cards);
+        if (wild == 0) {
+            CardPattern.PatternType type = withSuits(classify(counts, size), cards, level);
+            if (type == null) return null;
+            return new CardPattern(type, patternRank(type, counts, level), size, cards, counts);
         }
         
-        // Single
-        if (size == 1) {
-            return new CardPattern(CardPattern.PatternType.SINGLE, cards.get(0).getRank(level), 1, cards);
+        long naturals = counts;
+        for (int i = 0; i < wild; i++) {
+            naturals = CardCodec.removeCount(naturals, Card.levelNumber(level));
         }
         
-        // Pair
-        if (size == 2 && counts.size() == 1) {
-            return new CardPattern(CardPattern.PatternType.PAIR, cards.get(0).getRank(level), 2, cards);
+        CardPattern best = null;
+        boolean bestBeats = false;
+        for (long completed : completions(naturals, wild, size, level)) {
+            CardPattern.PatternType type = withSuits(classify(completed, size), cards, level);
+            if (type == null) continue;
+            CardPattern candidate = new CardPattern(type, patternRank(type, completed, level), size, cards, counts);
+            boolean beats = target != null && candidate.canBeat(target, level);
+            if (best == null || (beats && !bestBeats) || (beats == bestBeats && candidate.strength() > best.strength())) {
+                best = candidate;
+                bestBeats = beats;
+            }
         }
-        
-        // Triple
-        if (size == 3 && counts.size() == 1) {
-            return new CardPattern(CardPattern.PatternType.TRIPLE, cards.get(0).getRank(level), 3, cards);
+        return best;
+    }
+    
+    // The histograms a play with wild wildcards can stand for. Instead of trying every substitution,
+    // only completions that can form a pattern are built: the wildcards as plain level cards, the
+    // wildcards joining the single natural number (pair/triple/bomb), a triple and a pair of the two
+    // natural numbers (full house), and for every run shape the windows whose gaps take exactly
+    // wild cards. Wildcards never stand in for jokers.
+    private List<Long> completions(long naturals, int wild, int size, int level) {
+        List<Long> completions = new ArrayList<>();
+        completions.add(fill(naturals, Card.levelNumber(level), wild));
+        
+        if (CardCodec.distinct(naturals) == 1 && CardCodec.lowestNumber(naturals) < 15) {
+            completions.add(fill(naturals, CardCodec.lowestNumber(naturals), wild));
         }
         
-        // Straight
-        if (size >= 5 && isConsecutive(cards, level, 1)) {
-            return new CardPattern(CardPattern.PatternType.STRAIGHT, getMaxRank(cards, level), size, cards);
+        if (size == 5 && CardCodec.distinct(naturals) == 2 && CardCodec.highestNumber(naturals) < 15) {
+            int low = CardCodec.lowestNumber(naturals);
+            int high = CardCodec.highestNumber(naturals);
+            completions.add(fillFullHouse(naturals, wild, low, high));
+            completions.add(fillFullHouse(naturals, wild, high, low));
         }
         
-        // Pair Straight
-        if (size >= 6 && size % 2 == 0 && isConsecutive(cards, level, 2)) {
-            return new CardPattern(CardPattern.PatternType.PAIR_STRAIGHT, getMaxRank(cards, level), size, cards);
+        for (int groupSize = 1; groupSize <= 3; groupSize++) {
+            int length = size / groupSize;
+            if (size % groupSize != 0 || length < CardPattern.runMinLength(groupSize)) continue;
+            for (int start = 1; start + length - 1 <= 16; start++) {
+                long completed = fillRun(naturals, wild, start, length, groupSize);
+                if (completed != 0) completions.add(completed);
+            }
         }
-        
-        // Triple Straight
-        if (size >= 6 && size % 3 == 0 && isConsecutive(cards, level, 3)) {
-            return new CardPattern(CardPattern.PatternType.TRIPLE_STRAIGHT, getMaxRank(cards, level), size, cards);
+        return completions;
+    }
+    
+    private static long fill(long counts, int number, int n) {
+        for (int i = 0; i < n; i++) {
+            counts = CardCodec.addCount(counts, number);
         }
-        
-        return null;
+        return counts;
     }
     
-    private boolean isConsecutive(List<Card> cards, int level, int groupSize) {
-        Map<Integer, Long> counts = cards.stream()
-            .collect(Collectors.groupingBy(Card::getNumber, Collectors.counting()));
-        
-        if (counts.values().stream().anyMatch(c -> c != groupSize)) return false;
+    // naturals completed to groupSize cards of each number in [start, start + length), or 0 if the
+    // naturals do not fit the window or the gaps do not take exactly wild cards
+    private static long fillRun(long naturals, int wild, int start, int length, int groupSize) {
+        long completed = naturals;
+        int used = 0;
+        int inside = 0;
+        for (int number = start; number < start + length; number++) {
+            int have = CardCodec.count(naturals, number);
+            if (have > groupSize) return 0;
+            if (have < groupSize && number >= 15) return 0;
+            inside += have;
+            used += groupSize - have;
+            if (used > wild) return 0;
+            completed = fill(completed, number, groupSize - have);
+        }
+        // every natural has to lie inside the window
+        return used == wild && inside == CardCodec.total(naturals) ? completed : 0;
+    }
+    
+    // naturals as a triple of `triple` and a pair of `pair`, or 0 if the wildcards do not fill exactly that
+    private static long fillFullHouse(long naturals, int wild, int triple, int pair) {
+        int needTriple = 3 - CardCodec.count(naturals, triple);
+        int needPair = 2 - CardCodec.count(naturals, pair);
+        if (needTriple < 0 || needPair < 0 || needTriple + needPair != wild) return 0;
+        return fill(fill(naturals, triple, needTriple), pair, needPair);
+    }
+    
+    // a five-card straight of a single suit is a straight flush; wildcards take any suit
+    private static CardPattern.PatternType withSuits(CardPattern.PatternType type, List<Card> cards, int level) {
+        if (type != CardPattern.PatternType.STRAIGHT || cards.size() != 5) return type;
+        Card.Suit suit = null;
+        for (int i = 0; i < 5; i++) {
+            Card card = cards.get(i);
+            if (card.isRedHeartLevelCard(level)) continue;
+            if (suit == null) {
+                suit = card.getSuit();
+            } else if (card.getSuit() != suit) {
+                return type;
+            }
+        }
+        return suit == Card.Suit.JOKER ? type : CardPattern.PatternType.STRAIGHT_FLUSH;
+    }
+    
+    private static CardPattern.PatternType[][] buildShapes() {
+        CardPattern.PatternType[][] shapes = new CardPattern.PatternType[MAX_GROUP + 1][17];
+        shapes[1][1] = CardPattern.PatternType.SINGLE;
+        shapes[2][1] = CardPattern.PatternType.PAIR;
+        shapes[3][1] = CardPattern.PatternType.TRIPLE;
+        for (int group = 4; group <= MAX_GROUP; group++) {
+            shapes[group][1] = CardPattern.PatternType.BOMB;
+        }
+        for (int distinct = CardPattern.runMinLength(1); distinct <= 16; distinct++) {
+            shapes[1][distinct] = CardPattern.PatternType.STRAIGHT;
+        }
+        for (int distinct = CardPattern.runMinLength(2); distinct <= 16; distinct++) {
+            shapes[2][distinct] = CardPattern.PatternType.PAIR_STRAIGHT;
+        }
+        for (int distinct = CardPattern.runMinLength(3); distinct <= 16; distinct++) {
+            shapes[3][distinct] = CardPattern.PatternType.TRIPLE_STRAIGHT;
+        }
+        return shapes;
+    }
+    
+    // Classifies a play from its per-number histogram only, without allocating: one pass collects
+    // the shape (distinct numbers, smallest and largest group, span) and the SHAPES table maps
+    // uniform consecutive shapes to their type. Suits are not looked at, see withSuits.
+    public CardPattern.PatternType classify(long counts, int size) {
+        // King Bomb
+        if (size == 4 && CardCodec.count(counts, 15) == 2 && CardCodec.count(counts, 16) == 2) {
+            return CardPattern.PatternType.KING_BOMB;
+        }
         
-        List<Integer> nums = new ArrayList<>(counts.keySet());
-        Collections.sort(nums);
+        int distinct = 0;
+        int minGroup = Integer.MAX_VALUE;
+        int maxGroup = 0;
+        int low = 0;
+        int high = 0;
+        int number = 1;
+        for (long c = counts; c != 0; c >>>= 4, number++) {
+            int group = (int) (c & 0xF);
+            if (group == 0) continue;
+            distinct++;
+            minGroup = Math.min(minGroup, group);
+            maxGroup = Math.max(maxGroup, group);
+            if (low == 0) low = number;
+            high = number;
+        }
+        if (distinct == 0) return null;
         
-        for (int i = 1; i < nums.size(); i++) {
-            if (nums.get(i) - nums.get(i - 1) != 1) return false;
+        if (minGroup == maxGroup) {
+            if (high - low + 1 != distinct || maxGroup > MAX_GROUP) return null;
+            return SHAPES[maxGroup][distinct];
         }
         
-        return true;
+        // Full House: a triple and a pair
+        if (size == 5 && distinct == 2 && maxGroup == 3) return CardPattern.PatternType.FULL_HOUSE;
+        
+        return null;
     }
     
-    private int getMaxRank(List<Card> cards, int level) {
-        return cards.stream().mapToInt(c -> c.getRank(level)).max().orElse(0);
+    private int patternRank(CardPattern.PatternType type, long counts, int level) {
+        switch (type) {
+            case KING_BOMB:
+                return 16;
+            case STRAIGHT:
+            case STRAIGHT_FLUSH:
+            case PAIR_STRAIGHT:
+            case TRIPLE_STRAIGHT:
+                return CardCodec.maxRank(counts, level);
+            case FULL_HOUSE:
+                // ranked by the triple
+                int low = CardCodec.lowestNumber(counts);
+                return Card.rankOf(CardCodec.count(counts, low) == 3 ? low : CardCodec.highestNumber(counts), level);
+            default:
+                return Card.rankOf(CardCodec.lowestNumber(counts), level);
+        }
     }
     
     public boolean playCards(GameRoom room, int playerId, List<Card> cards) {
+        if (!room.isStarted() || room.isFinished()) return false;
         if (room.getCurrentPlayer() != playerId) return false;
+        if (cards == null) cards = new ArrayList<>();
         
-        CardPattern pattern = analyzePattern(cards, room.getLevel());
-        if (pattern == null && !cards.isEmpty()) return false;
+        CardPattern pattern = analyzePattern(cards, room.getLevel(), room.getLastPattern());
+        if (pattern == null) return false;
         
-        if (room.getLastPattern() != null && !pattern.canBeat(room.getLastPattern(), room.getLevel())) {
-            return false;
+        GameRoom.Player player = room.getPlayers()[playerId];
+        boolean pass = pattern.getType() == CardPattern.PatternType.PASS;
+        if (pass) {
+            // the round leader has to play something
+            if (room.getLastPattern() == null) return false;
+        } else {
+            if (!player.holds(cards)) return false;
+            if (room.getLastPattern() != null && !pattern.canBeat(room.getLastPattern(), room.getLevel())) {
+                return false;
+            }
         }
         
-        GameRoom.Player player = room.getPlayers()[playerId];
-        player.getHand().removeAll(cards);
+        if (!player.removeCards(cards)) return false;
+        if (room.getLog() != null) {
+            room.getLog().append(cards);
+        }
         
         room.getCurrentRoundCards().put(playerId, cards);
         
-        if (player.getHand().isEmpty()) {
-            room.getFinishedPlayers().add(playerId);
-            if (room.getFinishedPlayers().size() == 4) {
-                finishGame(room);
-                return true;
+        if (pass) {
+            room.setPassCount(room.getPassCount() + 1);
+        } else {
+            room.setLastPattern(pattern);
+            room.setLastPlayerId(playerId);
+            room.setPassCount(0);
+            if (player.getHand().isEmpty()) {
+                room.getFinishedPlayers().add(playerId);
             }
         }
         
-        if (!cards.isEmpty()) {
-            room.setLastPattern(pattern);
-            room.setLastPlayerId(playerId);
+        if (isGameOver(room)) {
+            appendEvent(room, RoomEvent.Type.PLAY, playerId, cards);
+            completeRanking(room);
+            finishGame(room);
+            appendEvent(room, RoomEvent.Type.FINISH, playerId, null);
+            return true;
         }
         
-        room.setCurrentPlayer((playerId + 1) % 4);
+        advanceTurn(room, playerId);
+        appendEvent(room, pass ? RoomEvent.Type.PASS : RoomEvent.Type.PLAY, playerId, cards);
         
         return true;
     }
     
+    // over once three players are out, or both players of one team
+    private boolean isGameOver(GameRoom room) {
+        List<Integer> finished = room.getFinishedPlayers();
+        if (finished.size() >= 3) return true;
+        return finished.size() == 2 && (finished.get(0) + 2) % 4 == finished.get(1);
+    }
+    
+    // players still holding cards are ranked after the finished ones, fewest cards first
+    private void completeRanking(GameRoom room) {
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            if (!room.getFinishedPlayers().contains(i)) remaining.add(i);
+        }
+        remaining.sort(Comparator.comparingInt(i -> room.getPlayers()[i].getHand().size()));
+        room.getFinishedPlayers().addAll(remaining);
+    }
+    
+    private void advanceTurn(GameRoom room, int playerId) {
+        int lastPlayer = room.getLastPlayerId();
+        boolean lastActive = isActive(room, lastPlayer);
+        int others = 4 - room.getFinishedPlayers().size() - (lastActive ? 1 : 0);
+        
+        if (room.getLastPattern() != null && room.getPassCount() >= others) {
+            // everyone passed: new round led by the last player, or by their partner if they went out
+            room.setLastPattern(null);
+            room.setPassCount(0);
+            room.getCurrentRoundCards().clear();
+            int partner = (lastPlayer + 2) % 4;
+            if (lastActive) {
+                room.setCurrentPlayer(lastPlayer);
+            } else if (isActive(room, partner)) {
+                room.setCurrentPlayer(partner);
+            } else {
+                room.setCurrentPlayer(nextActive(room, lastPlayer));
+            }
+        } else {
+            room.setCurrentPlayer(nextActive(room, playerId));
+        }
+    }
+    
+    private boolean isActive(GameRoom room, int seat) {
+        return !room.getFinishedPlayers().contains(seat);
+    }
+    
+    private int nextActive(GameRoom room, int seat) {
+        for (int i = 1; i <= 4; i++) {
+            int next = (seat + i) % 4;
+            if (isActive(room, next)) return next;
+        }
+        return seat;
+    }
+    
+    private void appendEvent(GameRoom room, RoomEvent.Type type, int seat, List<Card> cards) {
+        room.setSeq(room.getSeq() + 1);
+        room.getEvents().add(new RoomEvent(room.getSeq(), type, seat, cards, room.getCurrentPlayer()));
+        if (room.getEvents().size() > MAX_EVENTS) {
+            room.getEvents().remove(0);
+        }
+    }
+    
     private void finishGame(GameRoom room) {
         room.setFinished(true);
         
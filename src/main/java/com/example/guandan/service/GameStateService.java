@@ -0,0 +1,117 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import org.springframework.stereotype.Service;
+import java.util.*;
+
+// Builds the per-player game state payloads: a full snapshot, or only the events after the
+// client's last seen seq when the room still holds them
+@Service
+public class GameStateService {
+    
+    public Map<String, Object> playerState(GameRoom room, int seat, Long since) {
+        if (since != null && room.isStarted() && !room.isFinished() && !room.isPaused()) {
+            Map<String, Object> delta = delta(room, seat, since);
+            if (delta != null) return delta;
+        }
+        return snapshot(room, seat);
+    }
+    
+    public Map<String, Object> snapshot(GameRoom room, int seat) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("seq", room.getSeq());
+        
+        if (room.isFinished()) {
+            response.put("finished", true);
+            response.put("rank", room.getRanks());
+            return response;
+        }
+        
+        if (room.isPaused()) {
+            response.put("started", true);
+            response.put("paused", true);
+            response.put("player_comp", formatComp(room));
+            return response;
+        }
+        
+        response.put("turn", room.getCurrentPlayer());
+        response.put("deck", formatCards(room.getPlayers()[seat].getHand()));
+        response.put("comp", formatComp(room));
+        response.put("started", room.isStarted());
+        response.put("player_comp", formatComp(room));
+        response.put("finished_players", room.getFinishedPlayers());
+        response.put("finished", false);
+        response.put("paused", false);
+        
+        return response;
+    }
+    
+    // Events after since, or null if since falls outside the retained events (caller sends a snapshot).
+    // seat < 0 builds the public part only, without the player's own hand.
+    public Map<String, Object> delta(GameRoom room, int seat, long since) {
+        long floor = room.getSeq() - room.getEvents().size();
+        if (since < floor || since > room.getSeq()) return null;
+        
+        List<Map<String, Object>> events = new ArrayList<>();
+        boolean dealt = false;
+        for (RoomEvent event : room.getEvents()) {
+            if (event.getSeq() <= since) continue;
+            events.add(formatEvent(event));
+            dealt |= event.getType() == RoomEvent.Type.DEAL;
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("seq", room.getSeq());
+        response.put("delta", true);
+        response.put("events", events);
+        response.put("turn", room.getCurrentPlayer());
+        if (dealt && seat >= 0) {
+            response.put("deck", formatCards(room.getPlayers()[seat].getHand()));
+        }
+        return response;
+    }
+    
+    public boolean dealtSince(GameRoom room, long since) {
+        for (RoomEvent event : room.getEvents()) {
+            if (event.getSeq() > since && event.getType() == RoomEvent.Type.DEAL) return true;
+        }
+        return false;
+    }
+    
+    public Map<String, Object> formatEvent(RoomEvent event) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("seq", event.getSeq());
+        result.put("type", event.getType().name().toLowerCase());
+        result.put("seat", event.getSeat());
+        result.put("next", event.getNextPlayer());
+        if (event.getCards() != null && !event.getCards().isEmpty()) {
+            result.put("cards", formatCards(event.getCards()));
+        }
+        return result;
+    }
+    
+    public static List<Map<String, Object>> formatCards(List<Card> cards) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Card card : cards) {
+            Map<String, Object> cardMap = new HashMap<>();
+            cardMap.put("color", card.getColor());
+            cardMap.put("number", card.getNumber());
+            cardMap.put("selected", false);
+            result.add(cardMap);
+        }
+        return result;
+    }
+    
+    public List<Object> formatComp(GameRoom room) {
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<Card> cards = room.getCurrentRoundCards().get(i);
+            if (cards == null || cards.isEmpty()) {
+                result.add(null);
+            } else {
+                result.add(formatCards(cards));
+            }
+        }
+        return result;
+    }
+}
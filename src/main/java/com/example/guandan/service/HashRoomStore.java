@@ -0,0 +1,298 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Field-level layout: room:{id}:hash splits the room into meta (the small scalar state), seat0-3
+// (players without their cards), hand0-3 (two face masks each), lastPattern, currentRoundCards and
+// logHead (seed and level of the game log). A flush HSETs only the fields whose bytes changed since
+// the last successful write, so a ready toggle rewrites one seat and a play one hand plus the table
+// fields. The two parts that grow with every action are append-only keys of their own: the recent
+// events are RPUSHed to room:{id}:events and trimmed to GameService.MAX_EVENTS, and each move of
+// the game log APPENDs its two face masks to room:{id}:log. Seat checks of rooms not on the heap
+// HMGET the four seat fields instead of loading the room.
+@Service
+@ConditionalOnProperty(name = "guandan.room.store", havingValue = "hash")
+@RequiredArgsConstructor
+public class HashRoomStore implements RoomStore {
+    
+    private static final byte[][] SEATS = {bytes("seat0"), bytes("seat1"), bytes("seat2"), bytes("seat3")};
+    private static final byte[] NONE = new byte[0];
+    
+    private static final int MOVE_BYTES = 16; // two face masks per logged action
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    // what Redis holds for each room on the heap, replaced only once a flush has gone through
+    private final Map<String, Written> written = new ConcurrentHashMap<>();
+    
+    // the hash fields' bytes, the seq of the newest event pushed, and the log whose first logSize
+    // moves were appended
+    private record Written(Map<String, byte[]> fields, long eventSeq, GameLog log, int logSize) {}
+    
+    @Override
+    public GameRoom load(String roomId) {
+        byte[] key = hashKey(roomId);
+        byte[] eventsKey = eventsKey(roomId);
+        byte[] logKey = logKey(roomId);
+        Map<byte[], byte[]> raw = redisTemplate.execute(
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(key));
+        if (raw == null || raw.isEmpty()) return null;
+        List<byte[]> events = redisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.listCommands().lRange(eventsKey, 0, -1));
+        byte[] moves = redisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(logKey));
+        Map<String, byte[]> fields = new HashMap<>();
+        raw.forEach((field, value) -> fields.put(new String(field, StandardCharsets.UTF_8), value));
+        
+        RedisSerializer<Object> serializer = serializer();
+        GameRoom room = (GameRoom) serializer.deserialize(fields.get("meta"));
+        if (room == null) return null;
+        for (int i = 0; i < 4; i++) {
+            GameRoom.Player player = seat(serializer, fields.get("seat" + i));
+            if (player != null) {
+                ByteBuffer hand = ByteBuffer.wrap(fields.getOrDefault("hand" + i, new byte[16]));
+                player.setHand(CardCodec.cardsOf(hand.getLong(), hand.getLong()));
+            }
+            room.getPlayers()[i] = player;
+        }
+        byte[] lastPattern = fields.get("lastPattern");
+        room.setLastPattern(lastPattern == null || lastPattern.length == 0 ? null : (CardPattern) serializer.deserialize(lastPattern));
+        room.setCurrentRoundCards(decodeRoundCards(fields.get("currentRoundCards")));
+        List<RoomEvent> recent = new ArrayList<>();
+        if (events != null) {
+            for (byte[] event : events) recent.add((RoomEvent) serializer.deserialize(event));
+        }
+        room.setEvents(recent);
+        room.setLog(decodeLog(fields.get("logHead"), moves));
+        return room;
+    }
+    
+    @Override
+    public GameRoom.Player[] seats(String roomId) {
+        byte[] key = hashKey(roomId);
+        List<byte[]> values = redisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.hashCommands().hMGet(key, SEATS));
+        if (values == null || values.stream().allMatch(Objects::isNull)) return null;
+        RedisSerializer<Object> serializer = serializer();
+        GameRoom.Player[] players = new GameRoom.Player[4];
+        for (int i = 0; i < 4; i++) {
+            players[i] = seat(serializer, values.get(i));
+        }
+        return players;
+    }
+    
+    @Override
+    public Write capture(GameRoom room) {
+        String roomId = room.getRoomId();
+        RedisSerializer<Object> serializer = serializer();
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        fields.put("meta", meta(serializer, room));
+        for (int i = 0; i < 4; i++) {
+            GameRoom.Player player = room.getPlayers()[i];
+            fields.put("seat" + i, player == null ? NONE : serializer.serialize(seatView(player)));
+            fields.put("hand" + i, player == null ? NONE : encodeCards(player.getHand()));
+        }
+        fields.put("lastPattern", room.getLastPattern() == null ? NONE : serializer.serialize(room.getLastPattern()));
+        fields.put("currentRoundCards", encodeRoundCards(room.getCurrentRoundCards()));
+        GameLog log = room.getLog();
+        fields.put("logHead", log == null ? NONE : ByteBuffer.allocate(12).putLong(log.getSeed()).putInt(log.getLevel()).array());
+        
+        Written previous = written.get(roomId);
+        Map<String, byte[]> previousFields = previous != null ? previous.fields() : Map.of();
+        Map<byte[], byte[]> changed = new LinkedHashMap<>();
+        fields.forEach((field, value) -> {
+            if (!Arrays.equals(previousFields.get(field), value)) changed.put(bytes(field), value);
+        });
+        
+        // events after the newest one pushed; the whole list again if Redis' copy is unknown or the
+        // room has moved on further than it keeps events
+        List<RoomEvent> events = room.getEvents();
+        boolean resetEvents = previous == null
+                || (!events.isEmpty() && events.get(0).getSeq() > previous.eventSeq() + 1);
+        List<byte[]> pushed = new ArrayList<>();
+        long eventSeq = previous != null ? previous.eventSeq() : -1;
+        for (RoomEvent event : events) {
+            if (resetEvents || event.getSeq() > eventSeq) pushed.add(serializer.serialize(event));
+        }
+        long newestEvent = events.isEmpty() ? eventSeq : events.get(events.size() - 1).getSeq();
+        
+        // moves after those appended; the whole log again for a new game or an unknown Redis copy
+        boolean resetLog = previous == null || log != previous.log() || log == null || log.getSize() < previous.logSize();
+        byte[] moves = log == null ? null : encodeMoves(log, resetLog ? 0 : previous.logSize());
+        int logSize = log == null ? 0 : log.getSize();
+        
+        byte[] key = hashKey(roomId);
+        byte[] eventsKey = eventsKey(roomId);
+        byte[] logKey = logKey(roomId);
+        long ttl = TimeUnit.HOURS.toSeconds(ROOM_TTL_HOURS);
+        return new Write() {
+            @Override
+            public void apply(RedisConnection connection) {
+                if (!changed.isEmpty()) {
+                    connection.hashCommands().hMSet(key, changed);
+                    connection.keyCommands().expire(key, ttl);
+                }
+                if (resetEvents) connection.keyCommands().del(eventsKey);
+                if (!pushed.isEmpty()) {
+                    connection.listCommands().rPush(eventsKey, pushed.toArray(new byte[0][]));
+                    connection.listCommands().lTrim(eventsKey, -GameService.MAX_EVENTS, -1);
+                    connection.keyCommands().expire(eventsKey, ttl);
+                }
+                if (resetLog) {
+                    connection.keyCommands().del(logKey);
+                }
+                if (moves != null && moves.length > 0) {
+                    connection.stringCommands().append(logKey, moves);
+                    connection.keyCommands().expire(logKey, ttl);
+                }
+            }
+            
+            @Override
+            public void written() {
+                written.put(roomId, new Written(fields, newestEvent, log, logSize));
+            }
+            
+            @Override
+            public void failed() {
+                written.remove(roomId);
+            }
+        };
+    }
+    
+    @Override
+    public boolean exists(String roomId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(RoomStore.key(roomId) + ":hash"));
+    }
+    
+    @Override
+    public void delete(String roomId) {
+        written.remove(roomId);
+        String key = RoomStore.key(roomId);
+        redisTemplate.delete(List.of(key + ":hash", key + ":events", key + ":log"));
+    }
+    
+    @Override
+    public void forget(String roomId) {
+        written.remove(roomId);
+    }
+    
+    // the room without the parts that have fields or keys of their own; runs on the room's actor,
+    // which makes lending the room to the serializer safe
+    private static byte[] meta(RedisSerializer<Object> serializer, GameRoom room) {
+        GameRoom.Player[] players = room.getPlayers();
+        CardPattern lastPattern = room.getLastPattern();
+        Map<Integer, List<Card>> roundCards = room.getCurrentRoundCards();
+        List<RoomEvent> events = room.getEvents();
+        GameLog log = room.getLog();
+        room.setPlayers(new GameRoom.Player[4]);
+        room.setLastPattern(null);
+        room.setCurrentRoundCards(new HashMap<>());
+        room.setEvents(new ArrayList<>());
+        room.setLog(null);
+        try {
+            return serializer.serialize(room);
+        } finally {
+            room.setPlayers(players);
+            room.setLastPattern(lastPattern);
+            room.setCurrentRoundCards(roundCards);
+            room.setEvents(events);
+            room.setLog(log);
+        }
+    }
+    
+    private static GameRoom.Player seatView(GameRoom.Player player) {
+        GameRoom.Player view = new GameRoom.Player(player.getUserId(), player.getUsername(), player.getSeat());
+        view.setReady(player.isReady());
+        view.setOnline(player.isOnline());
+        view.setScore(player.getScore());
+        view.setBot(player.isBot());
+        return view;
+    }
+    
+    private static GameRoom.Player seat(RedisSerializer<Object> serializer, byte[] value) {
+        return value == null || value.length == 0 ? null : (GameRoom.Player) serializer.deserialize(value);
+    }
+    
+    private static byte[] encodeCards(List<Card> cards) {
+        long[] masks = CardCodec.masksOf(cards);
+        return ByteBuffer.allocate(16).putLong(masks[0]).putLong(masks[1]).array();
+    }
+    
+    // one (seat, first mask, second mask) triple per seat that played this round
+    private static byte[] encodeRoundCards(Map<Integer, List<Card>> roundCards) {
+        ByteBuffer buffer = ByteBuffer.allocate(roundCards.size() * 17);
+        new TreeMap<>(roundCards).forEach((seat, cards) -> {
+            long[] masks = CardCodec.masksOf(cards);
+            buffer.put(seat.byteValue()).putLong(masks[0]).putLong(masks[1]);
+        });
+        return buffer.array();
+    }
+    
+    private static Map<Integer, List<Card>> decodeRoundCards(byte[] value) {
+        Map<Integer, List<Card>> roundCards = new HashMap<>();
+        if (value == null) return roundCards;
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        while (buffer.remaining() >= 17) {
+            int seat = buffer.get();
+            roundCards.put(seat, CardCodec.cardsOf(buffer.getLong(), buffer.getLong()));
+        }
+        return roundCards;
+    }
+    
+    // the two face masks of each logged action from action `from` on
+    private static byte[] encodeMoves(GameLog log, int from) {
+        ByteBuffer buffer = ByteBuffer.allocate((log.getSize() - from) * MOVE_BYTES);
+        long[] masks = log.getMasks();
+        for (int i = 2 * from; i < 2 * log.getSize(); i++) {
+            buffer.putLong(masks[i]);
+        }
+        return buffer.array();
+    }
+    
+    private static GameLog decodeLog(byte[] head, byte[] moves) {
+        if (head == null || head.length == 0) return null;
+        ByteBuffer header = ByteBuffer.wrap(head);
+        GameLog log = new GameLog(header.getLong(), header.getInt());
+        int size = moves == null ? 0 : moves.length / MOVE_BYTES;
+        long[] masks = new long[Math.max(2 * size, 64)];
+        ByteBuffer buffer = moves == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(moves);
+        for (int i = 0; i < 2 * size; i++) {
+            masks[i] = buffer.getLong();
+        }
+        log.setMasks(masks);
+        log.setSize(size);
+        return log;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> serializer() {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+    
+    private static byte[] hashKey(String roomId) {
+        return bytes(RoomStore.key(roomId) + ":hash");
+    }
+    
+    private static byte[] eventsKey(String roomId) {
+        return bytes(RoomStore.key(roomId) + ":events");
+    }
+    
+    private static byte[] logKey(String roomId) {
+        return bytes(RoomStore.key(roomId) + ":log");
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.guandan.service;
+
+import com.example.guandan.entity.GameHistory;
+import com.example.guandan.entity.PlayerStats;
+import com.example.guandan.entity.User;
+import com.example.guandan.mapper.PlayerStatsMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Score leaderboards kept in Redis sorted sets of user ids: the global board mirrors
+// player_stats.total_score, and daily and weekly boards sum the score won or lost in games of that
+// day or ISO week. Finished games are added with ZINCRBY once their batch is in MySQL, and reads
+// are ZREVRANGE / ZREVRANK, so top-N and "my rank +- k" are O(log n) at any player count. The
+// global board is rebuilt from player_stats periodically to repair drift; increments that land
+// during a rebuild are lost until the next one.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LeaderboardService {
+    
+    private static final String PREFIX = "leaderboard:";
+    private static final int RECONCILE_PAGE = 1000;
+    private static final long DAILY_TTL_DAYS = 2;
+    private static final long WEEKLY_TTL_DAYS = 8;
+    
+    private final StringRedisTemplate redisTemplate;
+    private final PlayerStatsMapper playerStatsMapper;
+    private final UserService userService;
+    
+    public enum Board {
+        GLOBAL, DAILY, WEEKLY
+    }
+    
+    public record Standing(long rank, Long userId, String username, long score) {}
+    
+    // Adds the score changes of games already written to MySQL; runs on the history writer
+    public void recordGames(List<GameHistory> games) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                String global = key(Board.GLOBAL, null);
+                for (GameHistory game : games) {
+                    LocalDate day = game.getCreatedAt().toLocalDate();
+                    String daily = key(Board.DAILY, day);
+                    String weekly = key(Board.WEEKLY, day);
+                    Long[] players = {game.getPlayer0Id(), game.getPlayer1Id(), game.getPlayer2Id(), game.getPlayer3Id()};
+                    for (int seat = 0; seat < 4; seat++) {
+                        if (players[seat] == null || players[seat] == GameHistoryWriter.BOT_ID) continue;
+                        boolean won = seat % 2 == game.getWinnerTeam() % 2;
+                        double change = won ? game.getScoreChange() : -game.getScoreChange();
+                        String member = String.valueOf(players[seat]);
+                        redis.zIncrBy(global, change, member);
+                        redis.zIncrBy(daily, change, member);
+                        redis.zIncrBy(weekly, change, member);
+                    }
+                    redis.expire(daily, TimeUnit.DAYS.toSeconds(DAILY_TTL_DAYS));
+                    redis.expire(weekly, TimeUnit.DAYS.toSeconds(WEEKLY_TTL_DAYS));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // the global board is repaired by the next reconcile
+            log.warn("Failed to update leaderboards for {} games", games.size(), e);
+        }
+    }
+    
+    public List<Standing> top(Board board, int limit) {
+        return standings(key(board, LocalDate.now()), 0, limit - 1);
+    }
+    
+    // the user's standing with up to k players either side; empty if the user is not ranked
+    public List<Standing> around(Board board, Long userId, int k) {
+        String key = key(board, LocalDate.now());
+        Long rank = redisTemplate.opsForZSet().reverseRank(key, String.valueOf(userId));
+        if (rank == null) return List.of();
+        return standings(key, Math.max(0, rank - k), rank + k);
+    }
+    
+    // Rebuilds the global board from player_stats, paging by user id, and swaps it in at once
+    @Scheduled(initialDelayString = "${guandan.leaderboard.reconcile-interval-ms:3600000}",
+            fixedDelayString = "${guandan.leaderboard.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        String global = key(Board.GLOBAL, null);
+        String rebuild = global + ":rebuild";
+        try {
+            redisTemplate.delete(rebuild);
+            long rows = 0;
+            Long after = 0L;
+            while (true) {
+                List<PlayerStats> page = playerStatsMapper.findScoresAfter(after, RECONCILE_PAGE);
+                if (page.isEmpty()) break;
+                Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+                for (PlayerStats stats : page) {
+                    tuples.add(ZSetOperations.TypedTuple.of(String.valueOf(stats.getUserId()), stats.getTotalScore().doubleValue()));
+                }
+                redisTemplate.opsForZSet().add(rebuild, tuples);
+                rows += page.size();
+                after = page.get(page.size() - 1).getUserId();
+                if (page.size() < RECONCILE_PAGE) break;
+            }
+            if (rows > 0) {
+                redisTemplate.rename(rebuild, global);
+            }
+            log.info("Reconciled the global leaderboard with {} players", rows);
+        } catch (RuntimeException e) {
+            log.warn("Leaderboard reconciliation failed", e);
+        }
+    }
+    
+    private List<Standing> standings(String key, long from, long to) {
+        Set<ZSetOperations.TypedTuple<String>> range = redisTemplate.opsForZSet().reverseRangeWithScores(key, from, to);
+        List<Standing> standings = new ArrayList<>();
+        if (range == null) return standings;
+        long rank = from + 1;
+        for (ZSetOperations.TypedTuple<String> tuple : range) {
+            Long userId = Long.valueOf(tuple.getValue());
+            User user = userService.findById(userId);
+            standings.add(new Standing(rank++, userId, user != null ? user.getUsername() : null,
+                    tuple.getScore() == null ? 0 : tuple.getScore().longValue()));
+        }
+        return standings;
+    }
+    
+    private static String key(Board board, LocalDate day) {
+        return switch (board) {
+            case GLOBAL -> PREFIX + "global";
+            case DAILY -> PREFIX + "daily:" + day;
+            case WEEKLY -> PREFIX + "weekly:" + day.get(IsoFields.WEEK_BASED_YEAR) + "-W" + day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+        };
+    }
+}
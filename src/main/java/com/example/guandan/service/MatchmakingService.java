@@ -0,0 +1,267 @@
+package com.example.guandan.service;
+
+import com.example.guandan.entity.PlayerStats;
+import com.example.guandan.model.GameRoom;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Automatic seating of players who ask for a game. Players are bucketed by win rate, smoothed
+// toward 50% for players with few games, and queued without locks: a join is one CAS-based offer to
+// its bucket's queue. A single matcher thread drains all buckets every tick and forms tables in a
+// batch: first four players of one bucket, oldest first, then, for whoever is left, tables across
+// neighbouring buckets, with a search window that widens by one bucket per widen-every-ms of
+// waiting. After bot-fill-after-ms a player is seated with whoever is in range and bots in the
+// empty seats, which bounds the wait. Queues are per node.
+@Slf4j
+@Service
+public class MatchmakingService {
+    
+    private static final int BUCKETS = 20; // 5 win-rate points each
+    private static final int PRIOR_GAMES = 10; // games at 50% assumed for every player
+    private static final int TABLE = 4;
+    private static final int WAIT_SLOTS = 18; // slot i counts waits under 2^i ms
+    
+    private final RoomService roomService;
+    private final BotService botService;
+    private final UserService userService;
+    private final RoomExecutor roomExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final List<Queue<Ticket>> inbound = new ArrayList<>(BUCKETS);
+    private final List<List<Ticket>> waiting = new ArrayList<>(BUCKETS); // matcher thread only
+    private final Map<Long, Ticket> tickets = new ConcurrentHashMap<>();
+    private final long tickMs;
+    private final long widenEveryNanos;
+    private final long botFillAfterNanos;
+    private final int level;
+    private final Thread matcher;
+    private volatile boolean running = true;
+    
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder tables = new LongAdder();
+    private final LongAdder botTables = new LongAdder();
+    private final AtomicLongArray waits = new AtomicLongArray(WAIT_SLOTS);
+    
+    public record Seated(Long userId, int seat) {}
+    
+    // published on the room's actor once the matched players are seated
+    public record TableFormed(GameRoom room, List<Seated> players) {}
+    
+    private static final class Ticket {
+        private final Long userId;
+        private final String username;
+        private final int bucket;
+        private final long enqueuedAt = System.nanoTime();
+        // set once by whichever comes first, the matcher or a cancel
+        private final AtomicBoolean taken = new AtomicBoolean();
+        
+        private Ticket(Long userId, String username, int bucket) {
+            this.userId = userId;
+            this.username = username;
+            this.bucket = bucket;
+        }
+    }
+    
+    public MatchmakingService(RoomService roomService, BotService botService, UserService userService,
+                              RoomExecutor roomExecutor, ApplicationEventPublisher eventPublisher,
+                              @Value("${guandan.match.tick-ms:100}") long tickMs,
+                              @Value("${guandan.match.widen-every-ms:2000}") long widenEveryMs,
+                              @Value("${guandan.match.bot-fill-after-ms:30000}") long botFillAfterMs,
+                              @Value("${guandan.match.level:2}") int level) {
+        this.roomService = roomService;
+        this.botService = botService;
+        this.userService = userService;
+        this.roomExecutor = roomExecutor;
+        this.eventPublisher = eventPublisher;
+        this.tickMs = tickMs;
+        this.widenEveryNanos = TimeUnit.MILLISECONDS.toNanos(widenEveryMs);
+        this.botFillAfterNanos = TimeUnit.MILLISECONDS.toNanos(botFillAfterMs);
+        this.level = level;
+        for (int i = 0; i < BUCKETS; i++) {
+            inbound.add(new ConcurrentLinkedQueue<>());
+            waiting.add(new ArrayList<>());
+        }
+        this.matcher = new Thread(this::run, "matchmaker");
+        this.matcher.setDaemon(true);
+    }
+    
+    @PostConstruct
+    public void start() {
+        matcher.start();
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        matcher.interrupt();
+        matcher.join(TimeUnit.SECONDS.toMillis(1));
+    }
+    
+    // Queues the player; false if the player is already queued
+    public boolean join(Long userId, String username) {
+        Ticket ticket = new Ticket(userId, username, bucket(userService.getPlayerStats(userId)));
+        if (tickets.putIfAbsent(userId, ticket) != null) return false;
+        inbound.get(ticket.bucket).offer(ticket);
+        joined.increment();
+        return true;
+    }
+    
+    // Takes the player out of the queue; false if the player was not queued or is already matched
+    public boolean leave(Long userId) {
+        Ticket ticket = tickets.remove(userId);
+        if (ticket == null || !ticket.taken.compareAndSet(false, true)) return false;
+        cancelled.increment();
+        return true;
+    }
+    
+    public Map<String, Object> stats() {
+        long[] counts = new long[WAIT_SLOTS];
+        long total = 0;
+        for (int i = 0; i < WAIT_SLOTS; i++) {
+            counts[i] = waits.get(i);
+            total += counts[i];
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", tickets.size());
+        stats.put("joined", joined.sum());
+        stats.put("cancelled", cancelled.sum());
+        stats.put("tables", tables.sum());
+        stats.put("bot_tables", botTables.sum());
+        stats.put("wait_p50_ms", percentile(counts, total, 0.50));
+        stats.put("wait_p90_ms", percentile(counts, total, 0.90));
+        stats.put("wait_p99_ms", percentile(counts, total, 0.99));
+        return stats;
+    }
+    
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                tick(System.nanoTime());
+            } catch (RuntimeException e) {
+                log.warn("Matchmaking tick failed", e);
+            }
+        }
+    }
+    
+    private void tick(long now) {
+        for (int b = 0; b < BUCKETS; b++) {
+            Queue<Ticket> queue = inbound.get(b);
+            List<Ticket> bucket = waiting.get(b);
+            Ticket ticket;
+            while ((ticket = queue.poll()) != null) {
+                bucket.add(ticket);
+            }
+            bucket.removeIf(t -> t.taken.get());
+        }
+        
+        // tables of one bucket; each bucket is in arrival order
+        for (List<Ticket> bucket : waiting) {
+            for (int i = 0; i + TABLE <= bucket.size(); i += TABLE) {
+                List<Ticket> table = List.copyOf(bucket.subList(i, i + TABLE));
+                if (claim(table)) seat(table, now);
+            }
+        }
+        
+        // fewer than four are left in each bucket; the longest waiting pick from neighbouring buckets
+        List<Ticket> left = new ArrayList<>();
+        for (List<Ticket> bucket : waiting) {
+            for (Ticket ticket : bucket) {
+                if (!ticket.taken.get()) left.add(ticket);
+            }
+        }
+        left.sort(Comparator.comparingLong(t -> t.enqueuedAt));
+        for (Ticket oldest : left) {
+            if (oldest.taken.get()) continue;
+            long waited = now - oldest.enqueuedAt;
+            long window = widenEveryNanos > 0 ? waited / widenEveryNanos : BUCKETS;
+            List<Ticket> table = new ArrayList<>(TABLE);
+            table.add(oldest);
+            left.stream()
+                    .filter(t -> t != oldest && !t.taken.get() && Math.abs(t.bucket - oldest.bucket) <= window)
+                    .sorted(Comparator.<Ticket>comparingInt(t -> Math.abs(t.bucket - oldest.bucket))
+                            .thenComparingLong(t -> t.enqueuedAt))
+                    .limit(TABLE - 1)
+                    .forEach(table::add);
+            boolean full = table.size() == TABLE;
+            if ((full || botFillAfterNanos > 0 && waited >= botFillAfterNanos) && claim(table)) {
+                seat(table, now);
+            }
+        }
+        
+        for (List<Ticket> bucket : waiting) {
+            bucket.removeIf(t -> t.taken.get());
+        }
+    }
+    
+    // Takes every ticket of the table, or none if one of them was cancelled meanwhile
+    private boolean claim(List<Ticket> table) {
+        for (int i = 0; i < table.size(); i++) {
+            Ticket ticket = table.get(i);
+            // a cancel removes the ticket from the index before it tries to take it
+            if (!ticket.taken.compareAndSet(false, true) || tickets.get(ticket.userId) != ticket) {
+                for (int j = 0; j < i; j++) {
+                    table.get(j).taken.set(false);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void seat(List<Ticket> table, long now) {
+        for (Ticket ticket : table) {
+            tickets.remove(ticket.userId, ticket);
+            long waitedMs = TimeUnit.NANOSECONDS.toMillis(now - ticket.enqueuedAt);
+            waits.incrementAndGet(Math.min(WAIT_SLOTS - 1, 64 - Long.numberOfLeadingZeros(waitedMs)));
+        }
+        tables.increment();
+        if (table.size() < TABLE) botTables.increment();
+        
+        String roomId = roomService.createRoom("MULTIPLE", level, null).getRoomId();
+        roomExecutor.execute(roomId, () -> {
+            List<Seated> seated = new ArrayList<>(table.size());
+            for (Ticket ticket : table) {
+                int seat = roomService.addPlayer(roomId, ticket.userId, ticket.username);
+                if (seat >= 0) seated.add(new Seated(ticket.userId, seat));
+            }
+            GameRoom room = roomService.getRoom(roomId);
+            if (seated.size() < TABLE) botService.fillSeats(room);
+            eventPublisher.publishEvent(new TableFormed(room, seated));
+        });
+    }
+    
+    private static int bucket(PlayerStats stats) {
+        int games = stats == null || stats.getTotalGames() == null ? 0 : stats.getTotalGames();
+        int wins = stats == null || stats.getTotalWins() == null ? 0 : stats.getTotalWins();
+        double rating = (wins + PRIOR_GAMES / 2.0) / (games + PRIOR_GAMES);
+        return Math.min(BUCKETS - 1, (int) (rating * BUCKETS));
+    }
+    
+    // upper bound of the histogram slot holding the percentile
+    private static long percentile(long[] counts, long total, double p) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return 1L << i;
+        }
+        return 1L << (counts.length - 1);
+    }
+}
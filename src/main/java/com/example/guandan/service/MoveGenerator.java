@@ -0,0 +1,338 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import java.util.*;
+
+// Enumerates the legal plays of a hand for bots, hints and auto-play. Candidates are built from
+// the hand's per-number histogram (groups of one number and runs of consecutive numbers), then
+// again with the red-heart level cards standing in as wildcards, and classified by GameService,
+// so they are exactly the plays playCards accepts. Plays that differ only in suit are generated
+// once. The result is cached on the player and pruned as cards leave.
+@Service
+@RequiredArgsConstructor
+public class MoveGenerator {
+    
+    private final GameService gameService;
+    
+    // plays for the seat to move, restricted to those beating the current round's last play
+    public List<CardPattern> legalMoves(GameRoom room, int seat) {
+        return legalMoves(room.getPlayers()[seat], room.getLevel(), room.getLastPattern());
+    }
+    
+    // Cheapest play, used by bots and simulations: never over the partner's play, otherwise the
+    // weakest move that beats the last play (or the weakest lead, longest first among equals),
+    // passing when nothing beats it
+    public List<Card> greedyMove(GameRoom room, int seat) {
+        CardPattern last = room.getLastPattern();
+        if (last != null && room.getLastPlayerId() == (seat + 2) % 4) return new ArrayList<>();
+        
+        CardPattern best = null;
+        for (CardPattern move : legalMoves(room, seat)) {
+            if (best == null || move.strength() < best.strength()
+                    || (move.strength() == best.strength() && move.getCount() > best.getCount())) {
+                best = move;
+            }
+        }
+        return best == null ? new ArrayList<>() : new ArrayList<>(best.getCards());
+    }
+    
+    public List<CardPattern> legalMoves(GameRoom.Player player, int level, CardPattern target) {
+        List<CardPattern> all = movesOf(player, level).getPatterns();
+        if (target == null) return new ArrayList<>(all);
+        
+        List<CardPattern> beating = new ArrayList<>();
+        for (CardPattern pattern : all) {
+            if (pattern.canBeat(target, level)) beating.add(pattern);
+        }
+        return beating;
+    }
+    
+    private HandMoves movesOf(GameRoom.Player player, int level) {
+        HandMoves moves = player.getMoves();
+        long handCounts = player.getHandCounts();
+        if (moves == null || moves.getLevel() != level || !CardCodec.containsAll(moves.getCounts(), handCounts)) {
+            moves = new HandMoves(level, handCounts, generate(player, level));
+            player.setMoves(moves);
+        } else if (moves.getCounts() != handCounts) {
+            prune(moves, player, level);
+        }
+        return moves;
+    }
+    
+    // Cards have left the hand. Moves not touching their numbers still hold exactly. The others are
+    // picked again from the hand, with as many wildcards as before, and classified again, since
+    // other cards of the same numbers can turn a straight into a straight flush or back. Moves that
+    // can no longer be made, and readings already listed, are dropped.
+    private void prune(HandMoves moves, GameRoom.Player player, int level) {
+        long handCounts = player.getHandCounts();
+        long removed = CardCodec.present(moves.getCounts() - handCounts);
+        List<Card> naturals = new ArrayList<>(player.getHand().size());
+        List<Card> wilds = new ArrayList<>(2);
+        for (Card card : player.getHand()) {
+            (card.isRedHeartLevelCard(level) ? wilds : naturals).add(card);
+        }
+        
+        List<CardPattern> kept = new ArrayList<>(moves.getPatterns().size());
+        Set<Reading> readings = new HashSet<>();
+        for (CardPattern pattern : moves.getPatterns()) {
+            if (!CardCodec.containsAll(handCounts, pattern.getCounts())) continue;
+            if ((CardCodec.present(pattern.getCounts()) & removed) != 0
+                    && !(pattern.getType() == CardPattern.PatternType.STRAIGHT_FLUSH && player.holds(pattern.getCards()))) {
+                pattern = reselect(pattern, naturals, wilds, level);
+                if (pattern == null) continue;
+            }
+            if (readings.add(new Reading(pattern.getType(), pattern.getRank(), pattern.getCounts()))) kept.add(pattern);
+        }
+        moves.retain(handCounts, kept);
+    }
+    
+    private record Reading(CardPattern.PatternType type, int rank, long counts) {}
+    
+    private CardPattern reselect(CardPattern pattern, List<Card> naturals, List<Card> wilds, int level) {
+        int wild = 0;
+        for (Card card : pattern.getCards()) {
+            if (card.isRedHeartLevelCard(level)) wild++;
+        }
+        if (wild > wilds.size()) return null;
+        long counts = pattern.getCounts();
+        for (int i = 0; i < wild; i++) {
+            counts = CardCodec.removeCount(counts, Card.levelNumber(level));
+        }
+        if (!CardCodec.containsAll(CardCodec.countsOf(naturals), counts)) return null;
+        List<Card> cards = CardCodec.select(naturals, counts);
+        cards.addAll(wilds.subList(0, wild));
+        CardPattern reading = gameService.analyzePattern(cards, level);
+        if (reading != null && reading.getType() == CardPattern.PatternType.STRAIGHT_FLUSH
+                && pattern.getType() != CardPattern.PatternType.STRAIGHT_FLUSH) {
+            // the straight flush of these cards is a move of its own; this one stays a plain straight
+            reading = mixedSuits(naturals, cards, level);
+        }
+        return reading;
+    }
+    
+    private List<CardPattern> generate(GameRoom.Player player, int level) {
+        List<Card> naturals = new ArrayList<>(player.getHand().size());
+        List<Card> wilds = new ArrayList<>(2);
+        for (Card card : player.getHand()) {
+            (card.isRedHeartLevelCard(level) ? wilds : naturals).add(card);
+        }
+        // selecting by number takes natural cards first, so a wildcard only joins a candidate as
+        // its own number when no natural level card is left; wildcard readings come further below
+        List<Card> hand = new ArrayList<>(naturals);
+        hand.addAll(wilds);
+        long handCounts = player.getHandCounts();
+        List<CardPattern> patterns = new ArrayList<>();
+        
+        // singles, pairs, triples and bombs of every held number
+        for (int number = 1; number <= 16; number++) {
+            long group = 0;
+            for (int n = 1, held = CardCodec.count(handCounts, number); n <= held; n++) {
+                group = CardCodec.addCount(group, number);
+                add(patterns, hand, group, level);
+            }
+        }
+        
+        // King Bomb
+        if (CardCodec.count(handCounts, 15) == 2 && CardCodec.count(handCounts, 16) == 2) {
+            add(patterns, hand, group(15, 2) + group(16, 2), level);
+        }
+        
+        // full houses: every held triple with every other held pair
+        for (int triple = 1; triple <= 16; triple++) {
+            if (CardCodec.count(handCounts, triple) < 3) continue;
+            for (int pair = 1; pair <= 16; pair++) {
+                if (pair != triple && CardCodec.count(handCounts, pair) >= 2) {
+                    add(patterns, hand, group(triple, 3) + group(pair, 2), level);
+                }
+            }
+        }
+        
+        // straight flushes need specific cards, so they are read from the face masks per suit
+        long faces = player.getHandMasks()[0] | player.getHandMasks()[1];
+        for (int suit = 0; suit < 4; suit++) {
+            for (int start = 1; start + 4 <= 14; start++) {
+                List<Card> run = new ArrayList<>(5);
+                for (int number = start; number < start + 5; number++) {
+                    int face = CardCodec.face(CardCodec.suitName(suit), number);
+                    if (face < 0 || (faces & (1L << face)) == 0) break;
+                    run.add(Card.ofFace(face));
+                }
+                if (run.size() < 5) continue;
+                CardPattern pattern = gameService.analyzePattern(run, level);
+                if (pattern != null && pattern.getType() == CardPattern.PatternType.STRAIGHT_FLUSH) {
+                    patterns.add(pattern);
+                }
+            }
+        }
+        
+        // straights, pair straights and triple straights
+        for (int groupSize = 1; groupSize <= 3; groupSize++) {
+            for (int start = 1; start <= 16; start++) {
+                long run = 0;
+                for (int number = start; number <= 16 && CardCodec.count(handCounts, number) >= groupSize; number++) {
+                    for (int i = 0; i < groupSize; i++) {
+                        run = CardCodec.addCount(run, number);
+                    }
+                    if (number - start + 1 >= CardPattern.runMinLength(groupSize)) {
+                        add(patterns, hand, run, level);
+                    }
+                }
+            }
+        }
+        
+        addWildcardPlays(patterns, naturals, wilds, level);
+        return patterns;
+    }
+    
+    // Plays using w of the hand's red-heart level cards as wildcards. This runs GameService's
+    // completions backwards: for every shape a play with w wildcards can stand for, the naturals left
+    // once w of its cards are wildcards are looked up in the hand. Wildcards that only stand in for
+    // their own number are plain level cards, which the candidates above already cover, so every
+    // play here has at least one wildcard filling another number (straight flushes aside, where
+    // the suit matters).
+    private void addWildcardPlays(List<CardPattern> patterns, List<Card> naturals, List<Card> wilds, int level) {
+        if (wilds.isEmpty()) return;
+        long counts = CardCodec.countsOf(naturals);
+        int levelNumber = Card.levelNumber(level);
+        
+        for (int w = 1; w <= wilds.size(); w++) {
+            List<Card> wild = wilds.subList(0, w);
+            
+            // pairs, triples and bombs of a held number
+            for (int number = 1; number < 15; number++) {
+                if (number == levelNumber) continue;
+                for (int n = 1, held = CardCodec.count(counts, number); n <= held; n++) {
+                    addWithWildcards(patterns, naturals, group(number, n), wild, level);
+                }
+            }
+            
+            // full houses of two held numbers
+            for (int triple = 1; triple < 15; triple++) {
+                for (int pair = 1; pair < 15; pair++) {
+                    if (pair == triple) continue;
+                    for (int a = 1; a <= Math.min(3, CardCodec.count(counts, triple)); a++) {
+                        int b = 5 - w - a;
+                        if (b < 1 || b > Math.min(2, CardCodec.count(counts, pair))) continue;
+                        int elsewhere = (triple != levelNumber ? 3 - a : 0) + (pair != levelNumber ? 2 - b : 0);
+                        if (elsewhere == 0) continue;
+                        addWithWildcards(patterns, naturals, group(triple, a) + group(pair, b), wild, level);
+                    }
+                }
+            }
+            
+            // straights, pair straights and triple straights with gaps
+            for (int groupSize = 1; groupSize <= 3; groupSize++) {
+                for (int start = 1; start <= 16; start++) {
+                    int gaps = 0;
+                    for (int end = start; end <= 16; end++) {
+                        int missing = Math.max(0, groupSize - CardCodec.count(counts, end));
+                        if (missing > 0 && end >= 15) break;
+                        gaps += missing;
+                        if (gaps > w) break;
+                        if (end - start + 1 >= CardPattern.runMinLength(groupSize)) {
+                            addRuns(patterns, naturals, counts, wild, level, groupSize, start, end, 0, w, false);
+                        }
+                    }
+                }
+            }
+        }
+        
+        // straight flushes: five consecutive faces of one suit, any of them taken by wildcards (bit i
+        // of filled for the i-th face), as long as the faces left are held
+        long[] masks = CardCodec.masksOf(naturals);
+        long faces = masks[0] | masks[1];
+        for (int suit = 0; suit < 4; suit++) {
+            for (int start = 1; start + 4 <= 14; start++) {
+                for (int filled = 1; filled < 1 << 5; filled++) {
+                    int wild = Integer.bitCount(filled);
+                    if (wild > wilds.size()) continue;
+                    List<Card> run = new ArrayList<>(5);
+                    boolean elsewhere = false; // a wildcard only on its own face is a natural card, covered above
+                    for (int i = 0; i < 5 && run != null; i++) {
+                        int face = CardCodec.face(CardCodec.suitName(suit), start + i);
+                        if ((filled & (1 << i)) != 0) {
+                            elsewhere |= face < 0 || !Card.ofFace(face).isRedHeartLevelCard(level);
+                        } else if (face >= 0 && (faces & (1L << face)) != 0) {
+                            run.add(Card.ofFace(face));
+                        } else {
+                            run = null;
+                        }
+                    }
+                    if (run == null || !elsewhere) continue;
+                    run.addAll(wilds.subList(0, wild));
+                    CardPattern pattern = gameService.analyzePattern(run, level);
+                    if (pattern != null && pattern.getType() == CardPattern.PatternType.STRAIGHT_FLUSH) {
+                        patterns.add(pattern);
+                    }
+                }
+            }
+        }
+    }
+    
+    // Every way to take groupSize cards of each number from `number` to end out of the naturals,
+    // with exactly `left` of them short for the wildcards to fill, at least one at another number
+    private void addRuns(List<CardPattern> patterns, List<Card> naturals, long counts, List<Card> wild, int level,
+                         int groupSize, int number, int end, long run, int left, boolean elsewhere) {
+        if (number > end) {
+            if (left == 0 && elsewhere) addWithWildcards(patterns, naturals, run, wild, level);
+            return;
+        }
+        int held = CardCodec.count(counts, number);
+        boolean own = number == Card.levelNumber(level);
+        for (int gap = 0; gap <= Math.min(left, groupSize); gap++) {
+            if (gap > 0 && number >= 15) break;
+            if (groupSize - gap > held) continue;
+            addRuns(patterns, naturals, counts, wild, level, groupSize, number + 1, end,
+                    run + group(number, groupSize - gap), left - gap, elsewhere || (gap > 0 && !own));
+        }
+    }
+    
+    private static long group(int number, int n) {
+        long counts = 0;
+        for (int i = 0; i < n; i++) {
+            counts = CardCodec.addCount(counts, number);
+        }
+        return counts;
+    }
+    
+    private void add(List<CardPattern> patterns, List<Card> hand, long counts, int level) {
+        addSelected(patterns, hand, CardCodec.select(hand, counts), level);
+    }
+    
+    private void addWithWildcards(List<CardPattern> patterns, List<Card> naturals, long counts, List<Card> wild, int level) {
+        List<Card> cards = CardCodec.select(naturals, counts);
+        cards.addAll(wild);
+        addSelected(patterns, naturals, cards, level);
+    }
+    
+    // A run selected by number can come out all in one suit. Straight flushes are generated from
+    // the face masks, so such a selection is turned into the plain straight by swapping in a card of
+    // another suit from the pool, and dropped if the pool has none.
+    private void addSelected(List<CardPattern> patterns, List<Card> pool, List<Card> cards, int level) {
+        CardPattern pattern = gameService.analyzePattern(cards, level);
+        if (pattern == null) return;
+        if (pattern.getType() == CardPattern.PatternType.STRAIGHT_FLUSH) {
+            pattern = mixedSuits(pool, cards, level);
+            if (pattern == null) return;
+        }
+        patterns.add(pattern);
+    }
+    
+    private CardPattern mixedSuits(List<Card> pool, List<Card> cards, int level) {
+        for (int i = 0; i < cards.size(); i++) {
+            Card card = cards.get(i);
+            if (card.isRedHeartLevelCard(level)) continue;
+            for (Card other : pool) {
+                if (other.getNumber() != card.getNumber() || other.getSuit() == card.getSuit()
+                        || other.isRedHeartLevelCard(level)) continue;
+                List<Card> mixed = new ArrayList<>(cards);
+                mixed.set(i, other);
+                CardPattern pattern = gameService.analyzePattern(mixed, level);
+                if (pattern != null && pattern.getType() != CardPattern.PatternType.STRAIGHT_FLUSH) return pattern;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.guandan.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Fallback for legacy HTTP polling clients: a poller asking again within the minimum interval gets
+// its previous response back instead of another trip to the room. Keys name the poller only (room
+// and seat), never request parameters, so varying them neither escapes the limit nor grows the map.
+@Component
+public class PollRateLimiter {
+    
+    private static final long STALE_MS = 60000;
+    
+    private final Map<String, CachedPoll> lastPolls = new ConcurrentHashMap<>();
+    
+    @Value("${guandan.poll.min-interval-ms:1000}")
+    private long minIntervalMs;
+    
+    public Map<String, Object> poll(String key, Supplier<Map<String, Object>> loader) {
+        return poll(key, null, loader);
+    }
+    
+    // A cached snapshot answers any since, and a cached delta answers a since at or after its own (the
+    // client skips events it already has by seq). Only an earlier since reloads, and that can repeat at
+    // most as often as the room retains events before the answer becomes a snapshot.
+    public Map<String, Object> poll(String key, Long since, Supplier<Map<String, Object>> loader) {
+        long now = System.currentTimeMillis();
+        CachedPoll cached = lastPolls.get(key);
+        if (cached != null && now - cached.time < minIntervalMs && cached.covers(since)) {
+            return cached.response;
+        }
+        
+        Map<String, Object> response = loader.get();
+        lastPolls.put(key, new CachedPoll(now, since, response));
+        return response;
+    }
+    
+    @Scheduled(fixedDelay = STALE_MS)
+    public void evictStale() {
+        long cutoff = System.currentTimeMillis() - STALE_MS;
+        lastPolls.values().removeIf(cached -> cached.time < cutoff);
+    }
+    
+    private record CachedPoll(long time, Long since, Map<String, Object> response) {
+        
+        boolean covers(Long requested) {
+            if (response == null || !Boolean.TRUE.equals(response.get("delta"))) return true;
+            return requested != null && since != null && since <= requested;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.guandan.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs every action for a room on that room's mailbox: actions of one room execute one at a time
+// in submission order, while different rooms drain in parallel on a shared worker pool.
+@Slf4j
+@Component
+public class RoomExecutor {
+    
+    private static final int DRAIN_BATCH = 32; // tasks per turn before yielding the worker to other rooms
+    
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    
+    public RoomExecutor(@Value("${guandan.room.actor-threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r, "room-actor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @FunctionalInterface
+    public interface RoomTask {
+        void run() throws Exception;
+    }
+    
+    public void execute(String roomId, RoomTask task) {
+        enqueue(roomId, () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Room {} action failed", roomId, e);
+            }
+        });
+    }
+    
+    public <T> CompletableFuture<T> submit(String roomId, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(roomId, () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+    
+    // for blocking callers such as REST controllers
+    public <T> T call(String roomId, Callable<T> task) {
+        try {
+            return submit(roomId, task).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+    
+    private void enqueue(String roomId, Runnable task) {
+        // compute is atomic per key, so an enqueue can never race with the idle-mailbox removal in drain
+        Mailbox mailbox = mailboxes.compute(roomId, (id, existing) -> {
+            Mailbox target = existing != null ? existing : new Mailbox(id);
+            target.queue.add(task);
+            return target;
+        });
+        mailbox.schedule();
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    
+    private final class Mailbox implements Runnable {
+        private final String roomId;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        private Mailbox(String roomId) {
+            this.roomId = roomId;
+        }
+        
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+        
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Runnable task = queue.poll();
+                if (task == null) break;
+                task.run();
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            } else {
+                mailboxes.computeIfPresent(roomId, (id, mailbox) ->
+                        mailbox == this && queue.isEmpty() && !scheduled.get() ? null : mailbox);
+            }
+        }
+    }
+}
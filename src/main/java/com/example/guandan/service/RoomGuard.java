@@ -0,0 +1,155 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.GameRoom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cross-node arbiter for the room actions that race between nodes: seat claim, ready toggle and
+// the turn/sequence advance of a deal or play. Each is one Lua script on a small control hash,
+// room:{id}:ctl, so it costs one round trip and is atomic however many nodes hold a copy of the
+// room. The rules themselves stay in GameService; the scripts only decide whose action lands.
+// Every accepted action bumps the hash's epoch, which the acting node records in its copy
+// (GameRoom.ctlEpoch). A script refuses a copy whose epoch is behind, which is how a node learns
+// its copy is stale, and the flush's writeIfCurrent writes a room only while its epoch is current,
+// so a node that missed another node's action can neither act on nor write back its stale copy. Off by default, since on one node the room actor already
+// serializes everything.
+@Component
+public class RoomGuard {
+    
+    // Shared prologue: ARGV[1] is the epoch of the caller's copy. A missing hash (new or expired)
+    // accepts any epoch
+    private static final String CHECK_EPOCH = """
+            local epoch = redis.call('HGET', KEYS[1], 'epoch')
+            if epoch and epoch ~= ARGV[1] then return 0 end
+            local bumped = tonumber(ARGV[1]) + 1
+            """;
+    
+    // ARGV epoch, seat, occupant, ttl
+    private static final RedisScript<Long> CLAIM_SEAT = new DefaultRedisScript<>(CHECK_EPOCH + """
+            local field = 'seat' .. ARGV[2]
+            local current = redis.call('HGET', KEYS[1], field)
+            if current and current ~= ARGV[3] then return 0 end
+            redis.call('HSET', KEYS[1], field, ARGV[3], 'ready' .. ARGV[2], '1', 'epoch', bumped)
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            return bumped
+            """, Long.class);
+    
+    // ARGV epoch, seat, occupant, ready (0/1), ttl
+    private static final RedisScript<Long> SET_READY = new DefaultRedisScript<>(CHECK_EPOCH + """
+            if redis.call('HGET', KEYS[1], 'seat' .. ARGV[2]) ~= ARGV[3] then return 0 end
+            redis.call('HSET', KEYS[1], 'ready' .. ARGV[2], ARGV[4], 'epoch', bumped)
+            redis.call('EXPIRE', KEYS[1], ARGV[5])
+            return bumped
+            """, Long.class);
+    
+    // ARGV epoch, seat ('' for a deal), seq before the action, seq after, next player, ttl. Accepted
+    // if the action follows the last one recorded and it was the seat's turn
+    private static final RedisScript<Long> ADVANCE = new DefaultRedisScript<>(CHECK_EPOCH + """
+            local seq = redis.call('HGET', KEYS[1], 'seq')
+            if seq and seq ~= ARGV[3] then return 0 end
+            local turn = redis.call('HGET', KEYS[1], 'turn')
+            if ARGV[2] ~= '' and seq and turn and turn ~= ARGV[2] then return 0 end
+            redis.call('HSET', KEYS[1], 'seq', ARGV[4], 'turn', ARGV[5], 'epoch', bumped)
+            redis.call('EXPIRE', KEYS[1], ARGV[6])
+            return bumped
+            """, Long.class);
+    
+    private static final RedisSerializer<Long> RESULT = new GenericToStringSerializer<>(Long.class);
+    private static final String TTL = String.valueOf(TimeUnit.HOURS.toSeconds(RoomStore.ROOM_TTL_HOURS));
+    private static final byte[] EPOCH = "epoch".getBytes(StandardCharsets.UTF_8);
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final boolean enabled;
+    
+    public RoomGuard(RedisTemplate<String, Object> redisTemplate,
+                     @Value("${guandan.room.atomic-ops:false}") boolean enabled) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public boolean claimSeat(GameRoom room, int seat, GameRoom.Player player) {
+        if (!enabled) return true;
+        return run(CLAIM_SEAT, room, String.valueOf(seat), occupant(player), TTL);
+    }
+    
+    public boolean setReady(GameRoom room, int seat, GameRoom.Player player, boolean ready) {
+        if (!enabled) return true;
+        return run(SET_READY, room, String.valueOf(seat), occupant(player), ready ? "1" : "0", TTL);
+    }
+    
+    // seat -1 for a deal
+    public boolean advance(GameRoom room, int seat, long seqBefore) {
+        if (!enabled) return true;
+        return run(ADVANCE, room, seat < 0 ? "" : String.valueOf(seat), String.valueOf(seqBefore),
+                String.valueOf(room.getSeq()), String.valueOf(room.getCurrentPlayer()), TTL);
+    }
+    
+    // the epoch of the room's last accepted action, 0 if none is recorded; read on a local miss only
+    public long epoch(String roomId) {
+        byte[] ctl = bytes(key(roomId));
+        return epochOf(redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hashCommands().hGet(ctl, EPOCH)));
+    }
+    
+    // Applies a room write only if no action has been accepted since the copy's epoch, checked and
+    // written in one WATCH/MULTI transaction; false if the copy is stale and nothing was written
+    public boolean writeIfCurrent(String roomId, long epoch, RoomStore.Write write) {
+        byte[] ctl = bytes(key(roomId));
+        List<Object> result = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.watch(ctl);
+            if (epochOf(connection.hashCommands().hGet(ctl, EPOCH)) > epoch) {
+                connection.unwatch();
+                return null;
+            }
+            connection.multi();
+            write.apply(connection);
+            // makes the reply of a transaction that ran non-empty, whatever the write queued
+            connection.hashCommands().hGet(ctl, EPOCH);
+            return connection.exec();
+        });
+        return result != null && !result.isEmpty();
+    }
+    
+    public void delete(String roomId) {
+        if (enabled) redisTemplate.delete(key(roomId));
+    }
+    
+    // runs the script for the room's copy and records the new epoch in it if the action is accepted
+    private boolean run(RedisScript<Long> script, GameRoom room, String... args) {
+        String[] argv = new String[args.length + 1];
+        argv[0] = String.valueOf(room.getCtlEpoch());
+        System.arraycopy(args, 0, argv, 1, args.length);
+        Long epoch = redisTemplate.execute(script, RedisSerializer.string(), RESULT, List.of(key(room.getRoomId())), (Object[]) argv);
+        if (epoch == null || epoch == 0) return false;
+        room.setCtlEpoch(epoch);
+        return true;
+    }
+    
+    private static long epochOf(byte[] value) {
+        return value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8));
+    }
+    
+    private static String occupant(GameRoom.Player player) {
+        return player.getUserId() != null ? "user:" + player.getUserId() : "bot:" + player.getUsername();
+    }
+    
+    private static String key(String roomId) {
+        return RoomStore.key(roomId) + ":ctl";
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,18 +1,51 @@
 package com.example.guandan.service;
 
 import com.example.guandan.model.GameRoom;
+import com.example.guandan.model.RoomEvent;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+// Live rooms are kept on the heap and are authoritative on this node; saveRoom only marks a room
+// dirty and a scheduled flush writes dirty rooms to Redis in one pipelined batch, in the layout of
+// the configured RoomStore. Redis is read only on a local miss (restart or failover).
+// With atomic ops several nodes may hold a copy of the same room. An action costs the one RoomGuard
+// script, which refuses a copy another node has acted past; the refused node drops its copy and
+// reloads it on the next access. Reads do not check the epoch, so between actions a copy can lag
+// another node's action like Redis itself does. The flush writes each room conditionally on its
+// copy's epoch, so a stale copy is never written back over another node's change.
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class RoomService {
     
+    private static final long FLUSH_TIMEOUT_MS = 1000; // for all captures of one flush together
+    private static final long ADOPT_AFTER_MS = 5000; // a stored room behind the epoch this long is taken as it is
+    
     private final RedisTemplate<String, Object> redisTemplate;
+    private final RoomStore roomStore;
+    private final RoomGuard roomGuard;
+    private final GameHistoryWriter gameHistoryWriter;
+    private final RoomExecutor roomExecutor;
     private final Random random = new Random();
+    private final Map<String, CachedRoom> rooms = new ConcurrentHashMap<>();
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> behindSince = new ConcurrentHashMap<>(); // rooms whose stored copy lags the epoch
+    
+    @Value("${guandan.room.idle-evict-ms:1800000}")
+    private long idleEvictMs;
+    
+    // a room write together with the epoch of the copy it was captured from
+    private record Captured(RoomStore.Write write, long epoch) {}
     
     public String generateRoomId() {
         String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
@@ -38,50 +71,262 @@ public class RoomService {
     }
     
     public GameRoom getRoom(String roomId) {
-        return (GameRoom) redisTemplate.opsForValue().get("room:" + roomId);
+        CachedRoom cached = rooms.get(roomId);
+        if (cached == null) {
+            GameRoom stored = roomStore.load(roomId);
+            if (stored == null) return null;
+            // served but not kept, so the next access looks again; actions on it are refused
+            if (behind(roomId, stored)) return stored;
+            CachedRoom loaded = new CachedRoom(stored);
+            cached = rooms.putIfAbsent(roomId, loaded);
+            if (cached == null) cached = loaded;
+        }
+        cached.touch();
+        return cached.room;
+    }
+    
+    // Cheap check for callers about to dispatch to the room's actor: the heap, then the store
+    public boolean exists(String roomId) {
+        return rooms.containsKey(roomId) || roomStore.exists(roomId);
+    }
+    
+    // With atomic ops, whether a room just loaded is behind the last accepted action because the
+    // node that took it has not flushed yet. Nothing waits for that write: the caller gets the copy
+    // as it is and the next access loads again. A room still behind after ADOPT_AFTER_MS is taken
+    // to have lost its write with its node, and is adopted at the current epoch. This is the only
+    // epoch read outside the scripts, and only on a local miss.
+    private boolean behind(String roomId, GameRoom stored) {
+        if (!roomGuard.isEnabled()) return false;
+        long epoch = roomGuard.epoch(roomId);
+        if (stored.getCtlEpoch() >= epoch) {
+            behindSince.remove(roomId);
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - behindSince.computeIfAbsent(roomId, id -> now) < ADOPT_AFTER_MS) return true;
+        log.warn("Room {} in Redis is still behind epoch {}, using it as it is", roomId, epoch);
+        behindSince.remove(roomId);
+        stored.setCtlEpoch(epoch);
+        return false;
     }
     
     public void saveRoom(GameRoom room) {
-        redisTemplate.opsForValue().set("room:" + room.getRoomId(), room, 24, TimeUnit.HOURS);
+        room.setVersion(room.getVersion() + 1);
+        CachedRoom cached = rooms.get(room.getRoomId());
+        if (cached == null || cached.room != room) {
+            cached = new CachedRoom(room);
+            rooms.put(room.getRoomId(), cached);
+        }
+        cached.touch();
+        dirtyRooms.add(room.getRoomId());
     }
     
     public void deleteRoom(String roomId) {
-        redisTemplate.delete("room:" + roomId);
+        rooms.remove(roomId);
+        dirtyRooms.remove(roomId);
+        behindSince.remove(roomId);
+        roomStore.delete(roomId);
+        roomGuard.delete(roomId);
     }
     
+    // Seats the player in the first free seat; a seat lost to another node reloads the room and
+    // moves on to the next free seat of the fresh copy
     public int addPlayer(String roomId, Long userId, String username) {
-        GameRoom room = getRoom(roomId);
-        if (room == null) return -1;
-        
-        for (int i = 0; i < 4; i++) {
-            if (room.getPlayers()[i] == null) {
-                room.getPlayers()[i] = new GameRoom.Player(userId, username, i);
-                saveRoom(room);
-                return i;
+        for (int attempt = 0; attempt < 4; attempt++) {
+            GameRoom room = getRoom(roomId);
+            if (room == null) return -1;
+            
+            int free = -1;
+            for (int i = 0; i < 4 && free < 0; i++) {
+                if (room.getPlayers()[i] == null) free = i;
             }
+            if (free < 0) return -1;
+            if (seat(room, free, new GameRoom.Player(userId, username, free))) return free;
         }
         return -1;
     }
     
+    // Seats a player in an empty seat; false if another node took the seat or acted on the room first
+    public boolean seat(GameRoom room, int seat, GameRoom.Player player) {
+        if (!roomGuard.claimSeat(room, seat, player)) {
+            drop(room.getRoomId());
+            return false;
+        }
+        room.getPlayers()[seat] = player;
+        saveRoom(room);
+        return true;
+    }
+    
+    public boolean setReady(GameRoom room, int seat, boolean ready) {
+        GameRoom.Player player = room.getPlayers()[seat];
+        if (player == null) return false;
+        if (!roomGuard.setReady(room, seat, player, ready)) {
+            drop(room.getRoomId());
+            return false;
+        }
+        player.setReady(ready);
+        saveRoom(room);
+        return true;
+    }
+    
+    // Saves a room after a deal (seat -1) or play and records the game if the play finished it;
+    // false if another node moved the game on from seqBefore first, in which case this node's copy,
+    // with the action applied, is dropped
+    public boolean advance(GameRoom room, int seat, long seqBefore) {
+        if (!roomGuard.advance(room, seat, seqBefore)) {
+            drop(room.getRoomId());
+            return false;
+        }
+        saveRoom(room);
+        List<RoomEvent> events = room.getEvents();
+        RoomEvent last = events.isEmpty() ? null : events.get(events.size() - 1);
+        if (last != null && last.getType() == RoomEvent.Type.FINISH && last.getSeq() > seqBefore) {
+            gameHistoryWriter.submit(room);
+        }
+        return true;
+    }
+    
+    // Writes a captured room if its epoch is still current; false if the copy is stale. A write
+    // that fails leaves the room dirty for the next flush
+    private boolean writeGuarded(String roomId, Captured captured) {
+        try {
+            if (!roomGuard.writeIfCurrent(roomId, captured.epoch(), captured.write())) {
+                captured.write().failed();
+                return false;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to write room {} to Redis, will retry", roomId, e);
+            captured.write().failed();
+            dirtyRooms.add(roomId);
+            return true;
+        }
+        captured.write().written();
+        return true;
+    }
+    
     public boolean isRoomFull(String roomId) {
-        GameRoom room = getRoom(roomId);
-        if (room == null) return false;
+        GameRoom.Player[] players = seats(roomId);
+        if (players == null) return false;
         
         for (int i = 0; i < 4; i++) {
-            if (room.getPlayers()[i] == null) return false;
+            if (players[i] == null) return false;
         }
         return true;
     }
     
     public boolean allPlayersReady(String roomId) {
-        GameRoom room = getRoom(roomId);
-        if (room == null) return false;
+        GameRoom.Player[] players = seats(roomId);
+        if (players == null) return false;
         
         for (int i = 0; i < 4; i++) {
-            if (room.getPlayers()[i] == null || !room.getPlayers()[i].isReady()) {
+            if (players[i] == null || !players[i].isReady()) {
                 return false;
             }
         }
         return true;
     }
+    
+    // seat checks need no cards, so a room that is not on the heap is not loaded for them
+    private GameRoom.Player[] seats(String roomId) {
+        CachedRoom cached = rooms.get(roomId);
+        if (cached != null) {
+            cached.touch();
+            return cached.room.getPlayers();
+        }
+        return roomStore.seats(roomId);
+    }
+    
+    // Bounds the Redis lag of any room to roughly one flush interval
+    @Scheduled(fixedDelayString = "${guandan.room.flush-interval-ms:200}")
+    public void flushDirtyRooms() {
+        if (dirtyRooms.isEmpty()) return;
+        
+        // capture on each room's actor so the write never sees a half-applied action
+        Map<String, CompletableFuture<Captured>> pending = new HashMap<>();
+        for (Iterator<String> it = dirtyRooms.iterator(); it.hasNext(); ) {
+            String roomId = it.next();
+            it.remove();
+            CachedRoom cached = rooms.get(roomId);
+            if (cached == null) continue;
+            pending.put(roomId, roomExecutor.submit(roomId,
+                    () -> new Captured(roomStore.capture(cached.room), cached.room.getCtlEpoch())));
+        }
+        
+        Map<String, Captured> batch = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MS);
+        for (Map.Entry<String, CompletableFuture<Captured>> entry : pending.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                batch.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (Exception e) {
+                // busy or failed room; retry on the next flush
+                dirtyRooms.add(entry.getKey());
+            }
+        }
+        if (batch.isEmpty()) return;
+        
+        if (roomGuard.isEnabled()) {
+            // one conditional transaction per room instead of one pipeline
+            batch.forEach((roomId, captured) -> {
+                if (!writeGuarded(roomId, captured)) {
+                    roomExecutor.execute(roomId, () -> drop(roomId));
+                }
+            });
+            return;
+        }
+        
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Captured captured : batch.values()) {
+                    captured.write().apply(connection);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush {} rooms to Redis, will retry", batch.size(), e);
+            batch.values().forEach(captured -> captured.write().failed());
+            dirtyRooms.addAll(batch.keySet());
+            return;
+        }
+        batch.values().forEach(captured -> captured.write().written());
+    }
+    
+    @Scheduled(fixedDelayString = "${guandan.room.evict-interval-ms:60000}")
+    public void evictIdleRooms() {
+        long cutoff = System.currentTimeMillis() - idleEvictMs;
+        for (Iterator<Map.Entry<String, CachedRoom>> it = rooms.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, CachedRoom> entry = it.next();
+            if (entry.getValue().lastAccess < cutoff && !dirtyRooms.contains(entry.getKey())) {
+                it.remove();
+                roomStore.forget(entry.getKey());
+            }
+        }
+    }
+    
+    // forgets a copy that another node has moved past; the next access reloads it from Redis
+    private void drop(String roomId) {
+        log.warn("Room {} was changed by another node, dropping the local copy", roomId);
+        rooms.remove(roomId);
+        dirtyRooms.remove(roomId);
+        roomStore.forget(roomId);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flushDirtyRooms();
+    }
+    
+    private static final class CachedRoom {
+        private final GameRoom room;
+        private volatile long lastAccess;
+        
+        private CachedRoom(GameRoom room) {
+            this.room = room;
+            this.lastAccess = System.currentTimeMillis();
+        }
+        
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
 }
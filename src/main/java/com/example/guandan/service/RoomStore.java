@@ -0,0 +1,47 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.GameRoom;
+import org.springframework.data.redis.connection.RedisConnection;
+
+// How rooms are laid out in Redis, chosen by guandan.room.store. RoomService keeps live rooms on
+// the heap and only reaches the store on a local miss, on delete and from its pipelined flush.
+public interface RoomStore {
+    
+    long ROOM_TTL_HOURS = 24;
+    
+    // One room's pending write: captured on the room's actor, applied inside the flush pipeline
+    interface Write {
+        void apply(RedisConnection connection);
+        
+        // the pipeline carrying this write went through
+        default void written() {}
+        
+        // the pipeline failed and may have been applied in part
+        default void failed() {}
+    }
+    
+    GameRoom load(String roomId);
+    
+    // whether the store holds the room, without reading it
+    default boolean exists(String roomId) {
+        return load(roomId) != null;
+    }
+    
+    // runs on the room's actor, so it sees the room between two actions
+    Write capture(GameRoom room);
+    
+    void delete(String roomId);
+    
+    // the seated players of a room that is not on the heap, without their cards; null if unknown
+    default GameRoom.Player[] seats(String roomId) {
+        GameRoom room = load(roomId);
+        return room == null ? null : room.getPlayers();
+    }
+    
+    // the room was dropped from this node's heap
+    default void forget(String roomId) {}
+    
+    static String key(String roomId) {
+        return "room:" + roomId;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.GameRoom;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Default layout: the whole room as one JSON value under room:{id}, rewritten on every flush
+@Service
+@ConditionalOnProperty(name = "guandan.room.store", havingValue = "snapshot", matchIfMissing = true)
+@RequiredArgsConstructor
+public class SnapshotRoomStore implements RoomStore {
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    
+    @Override
+    public GameRoom load(String roomId) {
+        return (GameRoom) redisTemplate.opsForValue().get(RoomStore.key(roomId));
+    }
+    
+    @Override
+    public boolean exists(String roomId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(RoomStore.key(roomId)));
+    }
+    
+    @Override
+    public Write capture(GameRoom room) {
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[] key = RoomStore.key(room.getRoomId()).getBytes(StandardCharsets.UTF_8);
+        byte[] value = serializer.serialize(room);
+        return connection -> connection.stringCommands().set(key, value,
+                Expiration.from(ROOM_TTL_HOURS, TimeUnit.HOURS), RedisStringCommands.SetOption.upsert());
+    }
+    
+    @Override
+    public void delete(String roomId) {
+        redisTemplate.delete(RoomStore.key(roomId));
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Event-sourced layout: room:{id} holds a snapshot and room:{id}:stream the actions taken since
+// (join, leave, ready, online, deal, play, pass, finish), so a flush appends a few small entries
+// instead of rewriting four hands. A snapshot is written on a room's first flush on this node,
+// every snapshot-every actions, and whenever a change cannot be told as an action. Entry IDs are
+// <room version>-<n>, so load replays exactly the entries newer than the snapshot through
+// GameService. The stream keeps a tail of older entries as a feed for spectators and analytics.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "guandan.room.store", havingValue = "stream")
+public class StreamRoomStore implements RoomStore {
+    
+    private static final long STREAM_KEEP = 512; // approximate entries kept behind the snapshot
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final GameService gameService;
+    private final int snapshotEvery;
+    // what Redis holds for each room on the heap, replaced only once a flush has gone through
+    private final Map<String, Journal> journals = new ConcurrentHashMap<>();
+    
+    private enum Action {
+        JOIN, LEAVE, READY, ONLINE, DEAL, PLAY, PASS, FINISH
+    }
+    
+    private record Seat(Long userId, String username, boolean bot, boolean ready, boolean online) {
+        private static Seat of(GameRoom.Player player) {
+            return player == null ? null : new Seat(player.getUserId(), player.getUsername(), player.isBot(),
+                    player.isReady(), player.isOnline());
+        }
+        
+        private boolean sameOccupant(Seat other) {
+            return Objects.equals(userId, other.userId) && Objects.equals(username, other.username) && bot == other.bot;
+        }
+    }
+    
+    private record Journal(long seq, Seat[] seats, int sinceSnapshot) {
+        private static Journal of(GameRoom room, int sinceSnapshot) {
+            Seat[] seats = new Seat[4];
+            for (int i = 0; i < 4; i++) {
+                seats[i] = Seat.of(room.getPlayers()[i]);
+            }
+            return new Journal(room.getSeq(), seats, sinceSnapshot);
+        }
+    }
+    
+    public StreamRoomStore(RedisTemplate<String, Object> redisTemplate, GameService gameService,
+                           @Value("${guandan.room.snapshot-every:64}") int snapshotEvery) {
+        this.redisTemplate = redisTemplate;
+        this.gameService = gameService;
+        this.snapshotEvery = snapshotEvery;
+    }
+    
+    // the stream only extends the snapshot, so the snapshot key decides
+    @Override
+    public boolean exists(String roomId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(RoomStore.key(roomId)));
+    }
+    
+    @Override
+    public GameRoom load(String roomId) {
+        GameRoom room = (GameRoom) redisTemplate.opsForValue().get(RoomStore.key(roomId));
+        if (room == null) return null;
+        
+        byte[] stream = bytes(streamKey(roomId));
+        Range<String> newer = Range.rightUnbounded(Range.Bound.inclusive((room.getVersion() + 1) + "-0"));
+        List<ByteRecord> records = redisTemplate.execute(
+                (RedisCallback<List<ByteRecord>>) connection -> connection.streamCommands().xRange(stream, newer));
+        if (records == null) return room;
+        
+        for (ByteRecord record : records) {
+            Map<String, String> fields = new HashMap<>();
+            record.getValue().forEach((k, v) -> fields.put(string(k), string(v)));
+            if (!replay(room, fields)) {
+                log.warn("Stream of room {} diverged at entry {}, loading the state before it", roomId, record.getId());
+                // new entries must still sort after the ones skipped
+                room.setVersion(records.get(records.size() - 1).getId().getTimestamp());
+                break;
+            }
+            room.setVersion(record.getId().getTimestamp());
+        }
+        return room;
+    }
+    
+    @Override
+    public Write capture(GameRoom room) {
+        String roomId = room.getRoomId();
+        Journal journal = journals.get(roomId);
+        List<Map<byte[], byte[]>> entries = journal == null ? null : actions(journal, room);
+        if (entries == null || entries.isEmpty() || journal.sinceSnapshot() + entries.size() > snapshotEvery) {
+            return snapshot(room);
+        }
+        
+        // the epoch travels with the entries, as a snapshot carries it in the room
+        for (Map<byte[], byte[]> entry : entries) {
+            put(entry, "epoch", room.getCtlEpoch());
+        }
+        byte[] stream = bytes(streamKey(roomId));
+        long version = room.getVersion();
+        Journal next = Journal.of(room, journal.sinceSnapshot() + entries.size());
+        return new Write() {
+            @Override
+            public void apply(RedisConnection connection) {
+                for (int i = 0; i < entries.size(); i++) {
+                    connection.streamCommands().xAdd(StreamRecords.rawBytes(entries.get(i))
+                            .withStreamKey(stream).withId(RecordId.of(version, i)));
+                }
+                connection.keyCommands().expire(stream, TimeUnit.HOURS.toSeconds(ROOM_TTL_HOURS));
+            }
+            
+            @Override
+            public void written() {
+                journals.put(roomId, next);
+            }
+            
+            @Override
+            public void failed() {
+                // some entries may have landed; a snapshot supersedes them whatever they were
+                journals.remove(roomId);
+            }
+        };
+    }
+    
+    @Override
+    public void delete(String roomId) {
+        journals.remove(roomId);
+        redisTemplate.delete(List.of(RoomStore.key(roomId), streamKey(roomId)));
+    }
+    
+    @Override
+    public void forget(String roomId) {
+        journals.remove(roomId);
+    }
+    
+    private Write snapshot(GameRoom room) {
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        String roomId = room.getRoomId();
+        byte[] key = bytes(RoomStore.key(roomId));
+        byte[] stream = bytes(streamKey(roomId));
+        byte[] value = serializer.serialize(room);
+        Journal next = Journal.of(room, 0);
+        return new Write() {
+            @Override
+            public void apply(RedisConnection connection) {
+                connection.stringCommands().set(key, value,
+                        Expiration.from(ROOM_TTL_HOURS, TimeUnit.HOURS), RedisStringCommands.SetOption.upsert());
+                connection.streamCommands().xTrim(stream, STREAM_KEEP, true);
+            }
+            
+            @Override
+            public void written() {
+                journals.put(roomId, next);
+            }
+            
+            @Override
+            public void failed() {
+                journals.remove(roomId);
+            }
+        };
+    }
+    
+    // The entries that take the journaled state to the room's, seat changes first, or null if the
+    // room changed in a way no entry describes
+    private List<Map<byte[], byte[]>> actions(Journal journal, GameRoom room) {
+        List<Map<byte[], byte[]>> entries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Seat before = journal.seats()[i];
+            Seat after = Seat.of(room.getPlayers()[i]);
+            if (Objects.equals(before, after)) continue;
+            if (before != null && (after == null || !before.sameOccupant(after))) {
+                entries.add(entry(Action.LEAVE, i));
+                before = null;
+            }
+            if (after == null) continue;
+            if (before == null) {
+                Map<byte[], byte[]> join = entry(Action.JOIN, i);
+                if (after.userId() != null) put(join, "user", after.userId());
+                put(join, "name", after.username());
+                put(join, "bot", after.bot() ? 1 : 0);
+                entries.add(join);
+                // as seated by the Player constructor
+                before = new Seat(after.userId(), after.username(), after.bot(), true, true);
+            }
+            if (before.ready() != after.ready()) {
+                Map<byte[], byte[]> ready = entry(Action.READY, i);
+                put(ready, "ready", after.ready() ? 1 : 0);
+                entries.add(ready);
+            }
+            if (before.online() != after.online()) {
+                Map<byte[], byte[]> online = entry(Action.ONLINE, i);
+                put(online, "online", after.online() ? 1 : 0);
+                entries.add(online);
+            }
+        }
+        
+        if (room.getSeq() == journal.seq()) return entries;
+        List<RoomEvent> events = room.getEvents();
+        // events older than the room keeps have been missed
+        if (events.isEmpty() || events.get(0).getSeq() > journal.seq() + 1) return null;
+        boolean dealt = false;
+        for (RoomEvent event : events) {
+            if (event.getSeq() <= journal.seq()) continue;
+            switch (event.getType()) {
+                case DEAL -> {
+                    // only the seed of the current game is still known
+                    if (dealt || room.getLog() == null) return null;
+                    dealt = true;
+                    Map<byte[], byte[]> deal = entry(Action.DEAL, event.getSeat());
+                    put(deal, "seed", room.getLog().getSeed());
+                    put(deal, "level", room.getLog().getLevel());
+                    entries.add(deal);
+                }
+                case PLAY, PASS -> {
+                    Map<byte[], byte[]> play = entry(event.getType() == RoomEvent.Type.PLAY ? Action.PLAY : Action.PASS,
+                            event.getSeat());
+                    StringJoiner faces = new StringJoiner(",");
+                    if (event.getCards() != null) {
+                        for (Card card : event.getCards()) faces.add(String.valueOf(card.getFace()));
+                    }
+                    put(play, "cards", faces);
+                    entries.add(play);
+                }
+                case FINISH -> entries.add(entry(Action.FINISH, event.getSeat()));
+            }
+        }
+        return entries;
+    }
+    
+    // applies one entry to a loaded room; false if the rules refuse it
+    private boolean replay(GameRoom room, Map<String, String> fields) {
+        String epoch = fields.get("epoch");
+        if (epoch != null) room.setCtlEpoch(Long.parseLong(epoch));
+        int seat = Integer.parseInt(fields.get("seat"));
+        switch (Action.valueOf(fields.get("type"))) {
+            case JOIN -> {
+                String user = fields.get("user");
+                GameRoom.Player player = new GameRoom.Player(user == null ? null : Long.valueOf(user), fields.get("name"), seat);
+                player.setBot("1".equals(fields.get("bot")));
+                room.getPlayers()[seat] = player;
+            }
+            case LEAVE -> room.getPlayers()[seat] = null;
+            case READY -> room.getPlayers()[seat].setReady("1".equals(fields.get("ready")));
+            case ONLINE -> room.getPlayers()[seat].setOnline("1".equals(fields.get("online")));
+            case DEAL -> {
+                room.setLevel(Integer.parseInt(fields.get("level")));
+                gameService.initGame(room, Long.parseLong(fields.get("seed")));
+            }
+            case PLAY, PASS -> {
+                List<Card> cards = new ArrayList<>();
+                String faces = fields.get("cards");
+                if (faces != null && !faces.isEmpty()) {
+                    for (String face : faces.split(",")) cards.add(Card.ofFace(Integer.parseInt(face)));
+                }
+                return gameService.playCards(room, seat, cards);
+            }
+            case FINISH -> {
+                // settled by the play before it
+            }
+        }
+        return true;
+    }
+    
+    private static Map<byte[], byte[]> entry(Action type, int seat) {
+        Map<byte[], byte[]> entry = new LinkedHashMap<>();
+        put(entry, "type", type.name());
+        put(entry, "seat", seat);
+        return entry;
+    }
+    
+    private static void put(Map<byte[], byte[]> entry, String field, Object value) {
+        entry.put(bytes(field), bytes(String.valueOf(value)));
+    }
+    
+    private static String streamKey(String roomId) {
+        return RoomStore.key(roomId) + ":stream";
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.guandan.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+// Read-through cache with a bounded in-process tier in front of a shared Redis tier. The local
+// tier is split into LRU segments, each capped and locked on its own, and entries expire after
+// localTtl; Redis entries expire after redisTtl. A miss in both tiers calls the loader. A null
+// from the loader is cached as well, for negativeTtl, so unknown keys do not reach the database
+// on every lookup. Such absent entries are kept in Redis only, so a key that comes into existence is
+// seen by every node as soon as it is put. Redis errors degrade to the loader. Cached values are
+// shared and must not be mutated by callers.
+// A load can race an evict: the loader reads the old row, the owner commits and evicts, and the
+// loader's write would then put the old row back. So every evict or put bumps a generation, per
+// segment locally and per key in Redis ({prefix}{key}:gen), and the loader's write goes through
+// only if the generation it saw before loading is still current.
+@Slf4j
+class TieredCache<V> {
+    
+    private static final int SEGMENTS = 16;
+    private static final String ABSENT = "<absent>"; // Redis marker of a cached null
+    
+    // KEYS value, generation; ARGV generation seen before the load ('' if none), value, ttl ms
+    private static final RedisScript<Long> FILL = new DefaultRedisScript<>("""
+            if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then return 0 end
+            redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+    
+    // KEYS value, generation; ARGV value ('' to delete), ttl ms, generation ttl ms
+    private static final RedisScript<Long> REPLACE = new DefaultRedisScript<>("""
+            if ARGV[1] == '' then
+                redis.call('DEL', KEYS[1])
+            else
+                redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+            end
+            redis.call('INCR', KEYS[2])
+            redis.call('PEXPIRE', KEYS[2], ARGV[3])
+            return 1
+            """, Long.class);
+    
+    private static final RedisSerializer<Long> RESULT = new GenericToStringSerializer<>(Long.class);
+    
+    private record Entry<V>(V value, long expiresAt) {}
+    
+    private final String prefix;
+    private final Class<V> type;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long localTtlMs;
+    private final long redisTtlMs;
+    private final long negativeTtlMs;
+    private final List<Map<String, Entry<V>>> segments = new ArrayList<>(SEGMENTS);
+    private final long[] generations = new long[SEGMENTS]; // guarded by the segment
+    
+    TieredCache(String prefix, Class<V> type, RedisTemplate<String, Object> redisTemplate,
+                int maxSize, long localTtlMs, long redisTtlMs, long negativeTtlMs) {
+        this.prefix = prefix;
+        this.type = type;
+        this.redisTemplate = redisTemplate;
+        this.localTtlMs = localTtlMs;
+        this.redisTtlMs = redisTtlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                    return size() > segmentSize;
+                }
+            });
+        }
+    }
+    
+    V get(String key, Function<String, V> loader) {
+        int index = index(key);
+        Map<String, Entry<V>> segment = segments.get(index);
+        long now = System.currentTimeMillis();
+        long localGeneration;
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry != null && entry.expiresAt() > now) return entry.value();
+            localGeneration = generations[index];
+        }
+        
+        // value and generation in one round trip; null generation if Redis is unreachable
+        Object stored = null;
+        String redisGeneration = null;
+        byte[] valueKey = bytes(prefix + key);
+        byte[] generationKey = bytes(prefix + key + ":gen");
+        try {
+            List<byte[]> read = redisTemplate.execute(
+                    (RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(valueKey, generationKey));
+            if (read != null && read.size() == 2) {
+                stored = read.get(0) == null ? null : redisTemplate.getValueSerializer().deserialize(read.get(0));
+                redisGeneration = read.get(1) == null ? "" : new String(read.get(1), StandardCharsets.UTF_8);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Redis cache read of {}{} failed", prefix, key, e);
+        }
+        if (ABSENT.equals(stored)) return null;
+        if (type.isInstance(stored)) {
+            V value = type.cast(stored);
+            putLocal(index, key, value, localGeneration);
+            return value;
+        }
+        
+        V value = loader.apply(key);
+        if (value != null) putLocal(index, key, value, localGeneration);
+        if (redisGeneration != null) {
+            long ttl = value == null ? negativeTtlMs : redisTtlMs;
+            try {
+                redisTemplate.execute(FILL, RedisSerializer.string(), RESULT, List.of(prefix + key, prefix + key + ":gen"),
+                        redisGeneration, serialize(value), String.valueOf(ttl));
+            } catch (RuntimeException e) {
+                log.warn("Redis cache write of {}{} failed", prefix, key, e);
+            }
+        }
+        return value;
+    }
+    
+    void put(String key, V value) {
+        replace(key, value, value == null ? negativeTtlMs : redisTtlMs);
+    }
+    
+    void evict(String key) {
+        replace(key, null, 0);
+    }
+    
+    // value null with ttl 0 deletes the entry, with a positive ttl caches the null
+    private void replace(String key, V value, long ttl) {
+        int index = index(key);
+        Map<String, Entry<V>> segment = segments.get(index);
+        synchronized (segment) {
+            generations[index]++;
+            if (value == null) {
+                segment.remove(key);
+            } else {
+                segment.put(key, new Entry<>(value, System.currentTimeMillis() + localTtlMs));
+            }
+        }
+        try {
+            redisTemplate.execute(REPLACE, RedisSerializer.string(), RESULT, List.of(prefix + key, prefix + key + ":gen"),
+                    ttl == 0 ? "" : serialize(value), String.valueOf(ttl), String.valueOf(redisTtlMs));
+        } catch (RuntimeException e) {
+            log.warn("Redis cache write of {}{} failed", prefix, key, e);
+        }
+    }
+    
+    // caches the value unless the segment saw an evict or put since generation was read
+    private void putLocal(int index, String key, V value, long generation) {
+        Map<String, Entry<V>> segment = segments.get(index);
+        synchronized (segment) {
+            if (generations[index] != generation) return;
+            segment.put(key, new Entry<>(value, System.currentTimeMillis() + localTtlMs));
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private String serialize(V value) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[] json = serializer.serialize(value == null ? ABSENT : value);
+        return new String(json, StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static int index(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (SEGMENTS - 1);
+    }
+}
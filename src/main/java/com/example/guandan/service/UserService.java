@@ -2,38 +2,96 @@ package com.example.guandan.service;
 
 import com.example.guandan.entity.User;
 import com.example.guandan.entity.PlayerStats;
+import com.example.guandan.entity.GameParticipant;
 import com.example.guandan.mapper.UserMapper;
 import com.example.guandan.mapper.PlayerStatsMapper;
-import lombok.RequiredArgsConstructor;
+import com.example.guandan.mapper.GameParticipantMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 
+// Identity and stats lookups are on every room action, so they are read through two-level caches
+// (guandan.cache.*): users by name and by id, with unknown names cached as absent, and player
+// stats, which are evicted whenever stats are written. Cached users carry no password; login
+// always checks against MySQL. Cached copies also leave out their timestamps, which no caller reads
+// and the Redis serializer, without java.time support, cannot write.
 @Service
-@RequiredArgsConstructor
 public class UserService {
     
     private final UserMapper userMapper;
     private final PlayerStatsMapper playerStatsMapper;
+    private final GameParticipantMapper gameParticipantMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final TieredCache<User> usersByName;
+    private final TieredCache<User> usersById;
+    private final TieredCache<PlayerStats> stats;
     
-    @Transactional
+    public UserService(UserMapper userMapper, PlayerStatsMapper playerStatsMapper,
+                       GameParticipantMapper gameParticipantMapper, TransactionTemplate transactionTemplate,
+                       RedisTemplate<String, Object> redisTemplate,
+                       @Value("${guandan.cache.local-size:10000}") int localSize,
+                       @Value("${guandan.cache.local-ttl-ms:60000}") long localTtlMs,
+                       @Value("${guandan.cache.stats-local-ttl-ms:5000}") long statsLocalTtlMs,
+                       @Value("${guandan.cache.redis-ttl-ms:600000}") long redisTtlMs,
+                       @Value("${guandan.cache.negative-ttl-ms:30000}") long negativeTtlMs) {
+        this.userMapper = userMapper;
+        this.playerStatsMapper = playerStatsMapper;
+        this.gameParticipantMapper = gameParticipantMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.usersByName = new TieredCache<>("cache:user:name:", User.class, redisTemplate,
+                localSize, localTtlMs, redisTtlMs, negativeTtlMs);
+        this.usersById = new TieredCache<>("cache:user:id:", User.class, redisTemplate,
+                localSize, localTtlMs, redisTtlMs, negativeTtlMs);
+        // other nodes only see a stats eviction in Redis, so their local copies live briefly
+        this.stats = new TieredCache<>("cache:stats:", PlayerStats.class, redisTemplate,
+                localSize, statsLocalTtlMs, redisTtlMs, negativeTtlMs);
+    }
+    
+    // Throws DuplicateKeyException if the name is taken, possibly by another node since this one
+    // last looked it up; the name is then evicted so the next lookup sees the user
     public User register(String username, String password) {
         User user = new User();
         user.setUsername(username);
         user.setPassword(password);
-        userMapper.insert(user);
-        
-        PlayerStats stats = new PlayerStats();
-        stats.setUserId(user.getId());
-        stats.setTotalGames(0);
-        stats.setTotalWins(0);
-        stats.setTotalScore(0);
-        stats.setWinRate(BigDecimal.ZERO);
-        playerStatsMapper.insert(stats);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userMapper.insert(user);
+                
+                PlayerStats stats = new PlayerStats();
+                stats.setUserId(user.getId());
+                stats.setTotalGames(0);
+                stats.setTotalWins(0);
+                stats.setTotalScore(0);
+                stats.setWinRate(BigDecimal.ZERO);
+                playerStatsMapper.insert(stats);
+            });
+        } catch (DuplicateKeyException e) {
+            usersByName.evict(username);
+            throw e;
+        }
         
+        // committed; replaces the name's cached absence
+        usersByName.put(username, withoutPassword(user));
         return user;
     }
     
+    // The user of this name, registered with the default password if there is none yet
+    public User findOrRegister(String username) {
+        User user = findByUsername(username);
+        if (user != null) return user;
+        try {
+            return register(username, "default");
+        } catch (DuplicateKeyException e) {
+            // registered concurrently, on this node or another
+            return findByUsername(username);
+        }
+    }
+    
     public User login(String username, String password) {
         User user = userMapper.findByUsername(username);
         if (user != null && user.getPassword().equals(password)) {
@@ -43,31 +101,41 @@ public class UserService {
     }
     
     public User findByUsername(String username) {
-        return userMapper.findByUsername(username);
+        if (username == null) return null;
+        return usersByName.get(username, name -> withoutPassword(userMapper.findByUsername(name)));
+    }
+    
+    public User findById(Long id) {
+        return usersById.get(String.valueOf(id), key -> withoutPassword(userMapper.findById(id)));
     }
     
     public PlayerStats getPlayerStats(Long userId) {
-        return playerStatsMapper.findByUserId(userId);
+        return stats.get(String.valueOf(userId), key -> withoutTimestamp(playerStatsMapper.findByUserId(userId)));
     }
     
-    @Transactional
-    public void updateStats(Long userId, boolean won, int scoreChange) {
-        PlayerStats stats = playerStatsMapper.findByUserId(userId);
-        if (stats == null) {
-            stats = new PlayerStats();
-            stats.setUserId(userId);
-            stats.setTotalGames(0);
-            stats.setTotalWins(0);
-            stats.setTotalScore(0);
+    // call after player_stats rows of these users changed
+    public void evictStats(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            stats.evict(String.valueOf(userId));
         }
-        
-        stats.setTotalGames(stats.getTotalGames() + 1);
-        if (won) {
-            stats.setTotalWins(stats.getTotalWins() + 1);
-        }
-        stats.setTotalScore(stats.getTotalScore() + scoreChange);
-        stats.setWinRate(BigDecimal.valueOf(stats.getTotalWins() * 100.0 / stats.getTotalGames()));
-        
-        playerStatsMapper.update(stats);
+    }
+    
+    // A page of the user's games, newest first, starting after the given game (null for the newest)
+    public List<GameParticipant> getRecentGames(Long userId, GameParticipant after, int limit) {
+        return gameParticipantMapper.findPage(userId, after == null ? null : after.getCreatedAt(),
+                after == null ? null : after.getGameId(), limit);
+    }
+    
+    private static User withoutPassword(User user) {
+        if (user == null) return null;
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setUsername(user.getUsername());
+        return copy;
+    }
+    
+    private static PlayerStats withoutTimestamp(PlayerStats stats) {
+        if (stats != null) stats.setUpdatedAt(null);
+        return stats;
     }
 }
@@ -0,0 +1,31 @@
+-- Backfills game_participant from game_history rows written before the table existed.
+-- Idempotent; run once after creating the table from schema.sql.
+
+USE guandan;
+
+INSERT IGNORE INTO game_participant(user_id, game_id, created_at, seat, result)
+SELECT p.user_id, h.id, h.created_at, p.seat,
+       IF(p.seat % 2 = h.winner_team % 2, h.score_change, -h.score_change)
+FROM game_history h
+JOIN (
+    SELECT id, player0_id AS user_id, 0 AS seat FROM game_history
+    UNION ALL SELECT id, player1_id, 1 FROM game_history
+    UNION ALL SELECT id, player2_id, 2 FROM game_history
+    UNION ALL SELECT id, player3_id, 3 FROM game_history
+) p ON p.id = h.id
+WHERE p.user_id <> 0;
+
+-- The per-seat indexes only served the OR query that game_participant replaces. Each index is
+-- dropped only if it still exists, so a second run is a no-op.
+SET @drop = (
+    SELECT IF(COUNT(*) = 0, 'DO 0',
+              CONCAT('ALTER TABLE game_history ',
+                     GROUP_CONCAT(DISTINCT CONCAT('DROP INDEX ', index_name) SEPARATOR ', ')))
+    FROM information_schema.statistics
+    WHERE table_schema = DATABASE()
+      AND table_name = 'game_history'
+      AND index_name IN ('idx_player0', 'idx_player1', 'idx_player2', 'idx_player3')
+);
+PREPARE drop_seat_indexes FROM @drop;
+EXECUTE drop_seat_indexes;
+DEALLOCATE PREPARE drop_seat_indexes;
@@ -26,11 +26,19 @@ CREATE TABLE IF NOT EXISTS game_history (
     score_change INT NOT NULL COMMENT 'score change for winners',
     game_type VARCHAR(10) NOT NULL COMMENT 'SINGLE or MULTIPLE',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    INDEX idx_room (room_id),
-    INDEX idx_player0 (player0_id),
-    INDEX idx_player1 (player1_id),
-    INDEX idx_player2 (player2_id),
-    INDEX idx_player3 (player3_id)
+    INDEX idx_room (room_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- One row per real player of a game; the primary key clusters a user's games newest-last, so a
+-- page of recent games is one index range scan (existing data: migration/001_game_participant.sql)
+CREATE TABLE IF NOT EXISTS game_participant (
+    user_id BIGINT NOT NULL,
+    game_id BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    seat TINYINT NOT NULL,
+    result TINYINT NOT NULL COMMENT 'levels won (positive) or lost (negative) by the player''s team',
+    PRIMARY KEY (user_id, created_at, game_id),
+    INDEX idx_game (game_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 -- Player statistics table
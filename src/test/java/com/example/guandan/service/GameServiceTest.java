@@ -0,0 +1,33 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServiceTest {
+    
+    private final GameService gameService = new GameService();
+    
+    // the 2s are numbered 14 in the deck, yet level 2 must still have its level cards and wildcards
+    @Test
+    void levelTwoDealHasLevelCardsAndWildcards() {
+        GameRoom room = new GameRoom();
+        room.setLevel(2);
+        for (int seat = 0; seat < 4; seat++) {
+            room.getPlayers()[seat] = new GameRoom.Player((long) seat + 1, "p" + seat, seat);
+        }
+        gameService.initGame(room, 7);
+        
+        int levelCards = 0;
+        int wildcards = 0;
+        for (GameRoom.Player player : room.getPlayers()) {
+            for (Card card : player.getHand()) {
+                if (card.isLevelCard(2)) levelCards++;
+                if (card.isRedHeartLevelCard(2)) wildcards++;
+            }
+        }
+        assertEquals(8, levelCards);
+        assertEquals(2, wildcards);
+        assertEquals(14, Card.ofFace(CardCodec.face("Spade", 14)).getRank(2));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.guandan.service;
+
+import com.example.guandan.model.*;
+import org.junit.jupiter.api.Test;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveGeneratorTest {
+    
+    private static final int LEVEL = 5;
+    
+    private final GameService gameService = new GameService();
+    private final MoveGenerator moveGenerator = new MoveGenerator(gameService);
+    
+    @Test
+    void wildcardBombIsGenerated() {
+        GameRoom.Player player = player(card("Heart", 5), card("Spade", 9), card("Club", 9), card("Diamond", 9));
+        boolean bomb = moveGenerator.legalMoves(player, LEVEL, null).stream()
+                .anyMatch(move -> move.getType() == CardPattern.PatternType.BOMB && move.getCount() == 4);
+        assertTrue(bomb);
+    }
+    
+    // every subset analyzePattern accepts has a generated move with the same reading and numbers;
+    // moves that differ only in suit are generated once
+    @Test
+    void generatesEveryAcceptedCombinationWithWildcards() {
+        List<Card> hand = List.of(card("Heart", 5), card("Heart", 5), card("Spade", 5),
+                card("Spade", 9), card("Club", 9), card("Diamond", 9),
+                card("Spade", 3), card("Spade", 4), card("Spade", 6), card("Spade", 7),
+                card("Diamond", 6), card("Club", 8), card("Club", 11), card("Diamond", 11));
+        Set<String> generated = new HashSet<>();
+        for (CardPattern move : moveGenerator.legalMoves(player(hand.toArray(new Card[0])), LEVEL, null)) {
+            generated.add(key(move));
+        }
+        
+        for (int subset = 1; subset < 1 << hand.size(); subset++) {
+            List<Card> cards = new ArrayList<>();
+            for (int i = 0; i < hand.size(); i++) {
+                if ((subset & (1 << i)) != 0) cards.add(hand.get(i));
+            }
+            CardPattern pattern = gameService.analyzePattern(cards, LEVEL);
+            if (pattern != null) {
+                assertTrue(generated.contains(key(pattern)), () -> "missing " + key(pattern) + " " + cards);
+            }
+        }
+    }
+    
+    // after every play the pruned cache lists the same readings as generating the hand afresh
+    @Test
+    void prunedMovesMatchRegeneratedMoves() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int game = 0; game < 50; game++) {
+            GameRoom room = new GameRoom();
+            room.setLevel(2 + game % 12);
+            for (int seat = 0; seat < 4; seat++) {
+                room.getPlayers()[seat] = new GameRoom.Player((long) seat + 1, "p" + seat, seat);
+            }
+            gameService.initGame(room, game);
+            GameRoom.Player player = room.getPlayers()[0];
+            while (!player.getHand().isEmpty()) {
+                List<CardPattern> moves = moveGenerator.legalMoves(player, room.getLevel(), null);
+                GameRoom.Player fresh = new GameRoom.Player(1L, "p", 0);
+                fresh.setHand(player.getHand());
+                assertEquals(keys(moveGenerator.legalMoves(fresh, room.getLevel(), null)), keys(moves));
+                assertTrue(player.removeCards(moves.get(random.nextInt(moves.size())).getCards()));
+            }
+        }
+    }
+    
+    private static Set<String> keys(List<CardPattern> moves) {
+        Set<String> keys = new HashSet<>();
+        for (CardPattern move : moves) {
+            keys.add(key(move));
+        }
+        return keys;
+    }
+    
+    private static String key(CardPattern pattern) {
+        return pattern.getType() + "/" + pattern.getRank() + "/" + Long.toHexString(pattern.getCounts());
+    }
+    
+    private static Card card(String color, int number) {
+        return Card.of(color, number);
+    }
+    
+    private static GameRoom.Player player(Card... cards) {
+        GameRoom.Player player = new GameRoom.Player(1L, "p", 0);
+        player.setHand(List.of(cards));
+        return player;
+    }
+}